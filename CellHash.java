@@ -0,0 +1,139 @@
+import java.util.Locale;
+
+/**
+ * Enum for the strategy mapping packed cell keys (see {@link CellTable#key(long, long)}) to the hash values that
+ * determine their desired slots in a {@link CellStore}. Tables use the low bits of the hash value, mixed with their
+ * own seed.
+ *
+ * The patterns simulated consist of small coordinates in dense rows, so a hash combining the coordinates linearly
+ * (like {@link #POINT2D}) maps neighbouring cells to neighbouring slots, piling up long probe sequences. Which of the
+ * mixing strategies works best depends on the pattern, see {@code LifeBenchmark -hashes}.
+ */
+public enum CellHash {
+    /**
+     * Fibonacci (multiply-shift) hashing: the high 32 bits of the key times 2^64 / golden ratio.
+     */
+    FIBONACCI,
+    /**
+     * The 64 bit finalizer of MurmurHash3, mixing every key bit into every hash bit.
+     */
+    MURMUR,
+    /**
+     * Z-order only within 2x2 blocks: the cells of a block get consecutive slots, the blocks themselves are hashed,
+     * see {@link #zOrderHash(long, long)}.
+     */
+    ZORDER,
+    /**
+     * The Morton code of the cell (bits of x and y interleaved), mixed by the MurmurHash3 finalizer.
+     */
+    MORTON,
+    /**
+     * The hash code of the original {@code Point2D} class (31 * x + y, each folded to 32 bits), only useful as a
+     * baseline for comparing the strategies.
+     */
+    POINT2D;
+
+    /**
+     * log2 of the number of cells of a Z-order block (2x2 cells).
+     */
+    private static final int Z_BLOCK_BITS = 2;
+
+    /**
+     * Calculates the hash value of a key.
+     * @param key the packed cell key.
+     * @param seed the hash seed of the table.
+     * @return the hash value.
+     */
+    public int hash(long key, long seed) {
+        // the default first; a switch rather than constant specific methods, so the call stays inlinable if a JVM
+        // uses several strategies
+        if (this == FIBONACCI) {
+            return fibonacciHash(key ^ seed);
+        }
+        switch (this) {
+            case MURMUR:
+                return (int) fmix64(key ^ seed);
+            case ZORDER:
+                return zOrderHash(key, seed);
+            case MORTON:
+                return (int) fmix64(morton(key) ^ seed);
+            case POINT2D:
+                return (31 * (int) (key >> 32) + (int) key) ^ (int) seed;
+            default:
+                return fibonacciHash(key ^ seed);
+        }
+    }
+
+    /**
+     * Returns the strategy with the given name.
+     * @param name the name in lower case, e.g. "zorder".
+     * @return the strategy or null if there is none with this name.
+     */
+    public static CellHash forName(String name) {
+        for (CellHash hash : values()) {
+            if (hash.name().toLowerCase(Locale.ROOT).equals(name)) {
+                return hash;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Calculates the hash value of a key by Fibonacci hashing, i.e. multiplication with 2^64 / golden ratio.
+     * @param key the key.
+     * @return the hash value.
+     */
+    static int fibonacciHash(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+
+    /**
+     * The 64 bit finalizer of MurmurHash3.
+     * @param k the value.
+     * @return the mixed value.
+     */
+    static long fmix64(long k) {
+        k = (k ^ (k >>> 33)) * 0xFF51AFD7ED558CCDL;
+        k = (k ^ (k >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return k ^ (k >>> 33);
+    }
+
+    /**
+     * Calculates the hash value of a key which interleaves the coordinates only within 2x2 blocks: the low 2 bits
+     * are the position of the cell within its block in Morton order, the high bits the Fibonacci hash of the block's
+     * Morton code. The cells of a block occupy a run of consecutive slots, so more neighbours of a cell are found in
+     * the same cache line. Iterating the slots is not a Z-order walk of the pattern though: only the 4 cells of a
+     * block are visited in Z-order, the blocks themselves come in hash order.
+     * @param key the key.
+     * @param seed the hash seed.
+     * @return the hash value.
+     */
+    static int zOrderHash(long key, long seed) {
+        long morton = morton(key);
+        return (fibonacciHash((morton >>> Z_BLOCK_BITS) ^ seed) << Z_BLOCK_BITS) | (int) (morton & ((1 << Z_BLOCK_BITS) - 1));
+    }
+
+    /**
+     * Calculates the Morton code of a key, interleaving the bits of the X (even bits) and Y (odd bits) coordinate.
+     * @param key the key.
+     * @return the Morton code.
+     */
+    static long morton(long key) {
+        return spreadBits(key >>> 32) | (spreadBits(key) << 1);
+    }
+
+    /**
+     * Spreads the low 32 bits of a number to the even bits of a long (bit i moves to bit 2i).
+     * @param v the number.
+     * @return the spread bits.
+     */
+    private static long spreadBits(long v) {
+        v &= 0xFFFFFFFFL;
+        v = (v | (v << 16)) & 0x0000FFFF0000FFFFL;
+        v = (v | (v << 8)) & 0x00FF00FF00FF00FFL;
+        v = (v | (v << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | (v << 2)) & 0x3333333333333333L;
+        v = (v | (v << 1)) & 0x5555555555555555L;
+        return v;
+    }
+}
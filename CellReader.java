@@ -0,0 +1,225 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads cell coordinates ("x y" per line) from a channel or a byte buffer without per-cell allocations.
+ *
+ * The input is read into a reusable buffer (or parsed in place if given as a buffer, e.g. a mapped file region) and
+ * the signed decimal coordinates are parsed directly from the bytes. Cells are passed on in batches of packed keys
+ * (see {@link CellTable#key(long, long)}) to a {@link CellSink}; coordinates outside
+ * [-{@link #MAX_COORDINATE}, {@link #MAX_COORDINATE}] are rejected, leaving room for the neighbours of every cell.
+ *
+ * Header and comment lines, i.e. lines whose first non-blank character is neither a digit nor a sign (e.g.
+ * "#Life 1.06" or "#P 0 0"), as well as blank lines are skipped; anything following the Y coordinate of a line is
+ * ignored.
+ */
+public class CellReader {
+
+    /**
+     * Receives batches of cells.
+     */
+    public interface CellSink {
+
+        /**
+         * Adds cells.
+         * @param keys the packed cell keys (only the first count are valid; the array is reused afterwards).
+         * @param count the number of cells.
+         */
+        void addCells(long[] keys, int count);
+    }
+
+    /**
+     * The max. absolute value of a coordinate read: one less than the range of {@link CellTable#key(long, long)}, so
+     * the neighbours of every cell read have keys as well.
+     */
+    static final long MAX_COORDINATE = CellTable.MAX_COORDINATE - 1;
+
+    /**
+     * The channel to read from, null if all input is in {@link #buffer}.
+     */
+    private final ReadableByteChannel channel;
+
+    /**
+     * The input buffer.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The cells parsed but not yet passed on.
+     */
+    private final long[] batch;
+
+    /**
+     * The number of valid cells in {@link #batch}.
+     */
+    private int batchSize;
+
+    /**
+     * true if the end of the channel was reached.
+     */
+    private boolean eof;
+
+    /**
+     * The current line number (for error messages).
+     */
+    private long line = 1;
+
+    /**
+     * Constructor.
+     * @param channel the channel to read from.
+     */
+    public CellReader(ReadableByteChannel channel) {
+        this(channel, 64 * 1024, 4096);
+    }
+
+    /**
+     * Constructor.
+     * @param input the input, parsed from its position to its limit.
+     */
+    public CellReader(ByteBuffer input) {
+        this.channel = null;
+        this.buffer = input;
+        this.batch = new long[4096];
+        this.eof = true;
+    }
+
+    /**
+     * Constructor.
+     * @param channel the channel to read from.
+     * @param bufferSize the size of the input buffer in bytes.
+     * @param batchSize the max. number of cells passed on at once.
+     */
+    public CellReader(ReadableByteChannel channel, int bufferSize, int batchSize) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(bufferSize);
+        this.buffer.flip(); // start empty
+        this.batch = new long[batchSize];
+    }
+
+    /**
+     * Reads all cells until the end of the channel.
+     * @param sink the sink receiving the cells.
+     * @throws IOException if reading fails or a line holds an incomplete / invalid coordinate pair.
+     */
+    public void readCells(CellSink sink) throws IOException {
+        int c;
+        while ((c = skipBlanks()) >= 0) {
+            if (c == '\n') {
+                next();
+                ++line;
+                continue;
+            }
+            if (c != '-' && c != '+' && (c < '0' || c > '9')) {
+                skipLine();
+                continue;
+            }
+
+            long x = parseLong();
+            if (skipBlanks() < 0 || peek() == '\n') {
+                throw new IOException("line " + line + ": missing Y coordinate");
+            }
+            long y = parseLong();
+
+            batch[batchSize++] = CellTable.key(x, y);
+            if (batchSize == batch.length) {
+                sink.addCells(batch, batchSize);
+                batchSize = 0;
+            }
+            skipLine();
+        }
+        if (batchSize > 0) {
+            sink.addCells(batch, batchSize);
+            batchSize = 0;
+        }
+    }
+
+    /**
+     * Refills the buffer if it is exhausted.
+     * @return true if at least one byte is available, false at the end of the channel.
+     * @throws IOException if reading fails.
+     */
+    private boolean fill() throws IOException {
+        while (!buffer.hasRemaining()) {
+            if (eof) {
+                return false;
+            }
+            buffer.clear();
+            eof = channel.read(buffer) < 0;
+            buffer.flip();
+        }
+        return true;
+    }
+
+    /**
+     * Returns the next byte without consuming it.
+     * @return the next byte or -1 at the end of the channel.
+     * @throws IOException if reading fails.
+     */
+    private int peek() throws IOException {
+        return fill() ? buffer.get(buffer.position()) : -1;
+    }
+
+    /**
+     * Consumes the next byte.
+     */
+    private void next() {
+        buffer.position(buffer.position() + 1);
+    }
+
+    /**
+     * Skips spaces, tabs and carriage returns.
+     * @return the next byte or -1 at the end of the channel.
+     * @throws IOException if reading fails.
+     */
+    private int skipBlanks() throws IOException {
+        int c;
+        while ((c = peek()) == ' ' || c == '\t' || c == '\r') {
+            next();
+        }
+        return c;
+    }
+
+    /**
+     * Skips the rest of the current line, including the line break.
+     * @throws IOException if reading fails.
+     */
+    private void skipLine() throws IOException {
+        int c;
+        while ((c = peek()) >= 0) {
+            next();
+            if (c == '\n') {
+                ++line;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Parses a signed decimal number.
+     * @return the number.
+     * @throws IOException if reading fails, there is no valid number at the current position or its absolute value
+     * exceeds {@link #MAX_COORDINATE}.
+     */
+    private long parseLong() throws IOException {
+        int c = peek();
+        boolean negative = c == '-';
+        if (c == '-' || c == '+') {
+            next();
+        }
+        long value = 0;
+        int digits = 0;
+        while ((c = peek()) >= '0' && c <= '9') {
+            value = value * 10 + (c - '0');
+            if (value > MAX_COORDINATE) {
+                throw new IOException("line " + line + ": coordinate out of range");
+            }
+            ++digits;
+            next();
+        }
+        if (digits == 0 || (c >= 0 && c != ' ' && c != '\t' && c != '\r' && c != '\n')) {
+            throw new IOException("line " + line + ": invalid coordinate");
+        }
+        return negative ? -value : value;
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * A table mapping cells (coordinates packed by {@link CellTable#key(long, long)}) to int values, used for storing
+ * generations.
+ *
+ * Implementations are open-addressing tables whose slots can be iterated by index from 0 to capacity() - 1; free
+ * slots hold {@link CellTable#EMPTY}.
+ */
+public interface CellStore {
+
+    /**
+     * Adds a cell (with value 0) to the table.
+     * @param key the packed cell key.
+     * @return true if the cell was added, false if it already was contained in the table.
+     */
+    boolean add(long key);
+
+    /**
+     * Adds a cell (with value 0) which is known not to be contained in the table, skipping the lookup of
+     * {@link #add(long)}.
+     * @param key the packed cell key.
+     */
+    void addNew(long key);
+
+    /**
+     * Adds cells (with value 0) to the table, growing the table at most once.
+     * @param keys the packed cell keys.
+     * @param count the number of keys to add, starting at index 0.
+     */
+    void addAll(long[] keys, int count);
+
+    /**
+     * Adds a cell to the table or updates its value if it already is contained in the table.
+     * @param key the packed cell key.
+     * @param value the value.
+     */
+    void put(long key, int value);
+
+    /**
+     * Increments the value of a cell, adding the cell with value 1 if it is not yet contained in the table.
+     * @param key the packed cell key.
+     * @return the incremented value.
+     */
+    int increment(long key);
+
+    /**
+     * Returns the value of a cell.
+     * @param key the packed cell key.
+     * @return the value or 0 if the table does not contain the cell.
+     */
+    int get(long key);
+
+    /**
+     * Checks if the table contains a cell.
+     * @param key the packed cell key.
+     * @return true if the table contains the cell, false otherwise.
+     */
+    boolean contains(long key);
+
+    /**
+     * Removes a cell from the table.
+     * @param key the packed cell key.
+     * @return true if the cell was removed, false if the table did not contain it.
+     */
+    boolean remove(long key);
+
+    /**
+     * Removes all cells from the table, keeping the allocated slots.
+     */
+    void clear();
+
+    /**
+     * Returns the number of cells in the table.
+     * @return the number of cells in the table.
+     */
+    int size();
+
+    /**
+     * Returns the number of slots.
+     * @return the number of slots.
+     */
+    int capacity();
+
+    /**
+     * Returns the key stored in a slot.
+     * @param slot the slot index.
+     * @return the packed cell key or {@link CellTable#EMPTY} if the slot is free.
+     */
+    long keyAt(int slot);
+
+    /**
+     * Returns the value stored in a slot.
+     * @param slot the slot index.
+     * @return the value of the cell in the slot, undefined if the slot is free.
+     */
+    int valueAt(int slot);
+
+    /**
+     * Returns the probe distance of the cell stored in a slot, i.e. the distance between its desired and its actual
+     * slot.
+     * @param slot the slot index.
+     * @return the probe distance, undefined if the slot is free.
+     */
+    int probeDistAt(int slot);
+
+    /**
+     * Calculates a histogram of the probe distances of all stored cells.
+     * @return an array whose i-th element is the number of cells stored i slots away from their desired slot.
+     */
+    int[] probeHistogram();
+
+    /**
+     * Calculates the max. probe distance of all stored cells.
+     * @return the max. probe distance.
+     */
+    int maxProbeDist();
+
+    /**
+     * Calculates the mean probe distance of all stored cells.
+     * @return the mean probe distance.
+     */
+    double meanProbeDist();
+
+    /**
+     * Releases the memory held by the table; the table must not be used afterwards.
+     */
+    void close();
+}
@@ -0,0 +1,522 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A table mapping cells to int values, implemented as an open-addressing hash table with linear probing and robin
+ * hood hashing over flat arrays (a port of cell_table.c).
+ *
+ * Cells are identified by their coordinates packed into a single long (see {@link #key(long, long)}), so neither
+ * adding nor looking up a cell allocates any objects. Both coordinates must lie within [-(2^31 - 1), 2^31 - 1]; the
+ * packed key of x = -2^31 is reserved for marking empty slots. Values are kept in a parallel int[] array; tables used
+ * as plain cell sets simply leave them at 0.
+ *
+ * Robin hood hashing keeps the variance of probe distances low: on insertion an element takes over the slot of a
+ * resident element that is closer to its desired slot, and lookups stop as soon as they meet such an element.
+ * Removal uses backward shift deletion, so no tombstones are needed.
+ *
+ * Every table hashes with its own seed. Otherwise, adding the cells of one table to another in slot order (e.g.
+ * sweeping the neighbour counts into the next generation) inserts them in the order of their desired slots, which
+ * piles them up in one growing cluster as soon as the target table is smaller than the source table.
+ *
+ * The hash function is pluggable (see {@link CellHash}), Fibonacci hashing by default; {@link #probeHistogram()}
+ * shows how well it spreads the cells of a pattern.
+ * @see <a href="https://cs.uwaterloo.ca/research/tr/1986/CS-86-14.pdf">Robin Hood Hashing</a>
+ * @see <a href="http://codecapsule.com/2013/11/17/robin-hood-hashing-backward-shift-deletion/">Backward shift deletion</a>
+ */
+public class CellTable implements CellStore {
+
+    /**
+     * The key marking an empty slot (x = -2^31, y = 0), never produced by {@link #key(long, long)} for valid cells.
+     */
+    static final long EMPTY = Long.MIN_VALUE;
+
+    /**
+     * The max. absolute value of a coordinate accepted by {@link #key(long, long)}.
+     */
+    public static final long MAX_COORDINATE = Integer.MAX_VALUE;
+
+    /**
+     * The default max. load factor.
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * The source of the hash seeds of all tables.
+     */
+    private static final AtomicLong SEEDS = new AtomicLong();
+
+    /**
+     * The slots, either holding a packed cell key or {@link #EMPTY}.
+     */
+    private long[] slots;
+
+    /**
+     * The values of the cells stored in the corresponding slots.
+     */
+    private int[] values;
+
+    /**
+     * Bit mask for mapping hash values to slot indices (the no. of slots - 1).
+     */
+    private int mask;
+
+    /**
+     * The max. load factor controlling growing + rehashing.
+     */
+    private final float loadFactor;
+
+    /**
+     * The hash function.
+     */
+    private final CellHash hashing;
+
+    /**
+     * The hash seed of this table.
+     */
+    private final long seed = nextSeed();
+
+    /**
+     * The no. of elements that triggers the next growth step.
+     */
+    private int threshold;
+
+    /**
+     * The number of cells currently stored in the table.
+     */
+    private int size;
+
+    /**
+     * Constructor.
+     * @param capacity the initial number of slots (rounded up to the next power of two).
+     */
+    public CellTable(int capacity) {
+        this(capacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Constructor.
+     * @param capacity the initial number of slots (rounded up to the next power of two).
+     * @param loadFactor a factor in (0, 1) controlling growing / rehashing of the table.
+     */
+    public CellTable(int capacity, float loadFactor) {
+        this(capacity, loadFactor, CellHash.FIBONACCI);
+    }
+
+    /**
+     * Constructor.
+     * @param capacity the initial number of slots (rounded up to the next power of two).
+     * @param loadFactor a factor in (0, 1) controlling growing / rehashing of the table.
+     * @param hashing the hash function.
+     */
+    public CellTable(int capacity, float loadFactor, CellHash hashing) {
+        if (loadFactor <= 0 || loadFactor >= 1) {
+            throw new IllegalArgumentException("load factor must be in (0, 1): " + loadFactor);
+        }
+        this.loadFactor = loadFactor;
+        this.hashing = hashing;
+        allocate(ceilPow2(Math.max(capacity, 2)));
+    }
+
+    /**
+     * Packs the coordinates of a cell into a key. Both coordinates must lie within
+     * [-{@link #MAX_COORDINATE}, {@link #MAX_COORDINATE}]: the key holds them in 32 bits each, and the excluded
+     * Integer.MIN_VALUE keeps {@link #EMPTY} from being a cell.
+     * @param x the X coordinate.
+     * @param y the Y coordinate.
+     * @return the packed key.
+     * @throws ArithmeticException if a coordinate is out of range, e.g. a live cell at the edge of the range has its
+     *         neighbours looked up.
+     */
+    public static long key(long x, long y) {
+        if (x < -MAX_COORDINATE || x > MAX_COORDINATE || y < -MAX_COORDINATE || y > MAX_COORDINATE) {
+            throw outOfRange(x, y);
+        }
+        return (x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Creates the exception for a cell outside the range of {@link #key(long, long)}; kept out of key() so the hot
+     * path stays small enough to be inlined.
+     * @param x the X coordinate.
+     * @param y the Y coordinate.
+     * @return the exception.
+     */
+    private static ArithmeticException outOfRange(long x, long y) {
+        return new ArithmeticException("cell out of range: " + x + " " + y);
+    }
+
+    /**
+     * Extracts the X coordinate from a packed key.
+     * @param key the key.
+     * @return the X coordinate.
+     */
+    public static long x(long key) {
+        return key >> 32;
+    }
+
+    /**
+     * Extracts the Y coordinate from a packed key.
+     * @param key the key.
+     * @return the Y coordinate.
+     */
+    public static long y(long key) {
+        return (int) key;
+    }
+
+    /**
+     * Calculates the hash value of a key.
+     * @param key the key.
+     * @return the hash value.
+     */
+    private int hash(long key) {
+        return hashing.hash(key, seed);
+    }
+
+    /**
+     * Returns a new hash seed, different for each call.
+     * @return the seed.
+     */
+    static long nextSeed() {
+        return SEEDS.addAndGet(0x9E3779B97F4A7C15L);
+    }
+
+    /**
+     * Rounds a number up to the next power of two.
+     * @param n the number to round.
+     * @return the smallest power of two greater than or equal to n.
+     */
+    private static int ceilPow2(int n) {
+        return Integer.highestOneBit(n - 1) << 1;
+    }
+
+    /**
+     * Allocates a new, empty slot array.
+     * @param capacity the number of slots, must be a power of two.
+     */
+    private void allocate(int capacity) {
+        slots = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(slots, EMPTY);
+        mask = capacity - 1;
+        threshold = (int) (capacity * loadFactor);
+    }
+
+    /**
+     * Calculates the probe distance of a key, i.e. the distance between its desired and its actual slot.
+     * @param key the key.
+     * @param idx the actual slot index.
+     * @return the probe distance.
+     */
+    private int probeDist(long key, int idx) {
+        return (idx - hash(key)) & mask;
+    }
+
+    /**
+     * Looks up the slot of a key.
+     * @param key the key.
+     * @return the slot index or -1 if the table does not contain the key.
+     */
+    private int find(long key) {
+        int idx = hash(key) & mask;
+        int dist = 0;
+        long k;
+        while ((k = slots[idx]) != EMPTY) {
+            if (k == key) {
+                return idx;
+            }
+            // stop searching when we found an element with lower probe distance
+            if (probeDist(k, idx) < dist) {
+                break;
+            }
+            idx = (idx + 1) & mask; // linear probing
+            ++dist;
+        }
+        return -1;
+    }
+
+    /**
+     * Adds a cell to the table.
+     * @param key the packed cell key.
+     * @return true if the cell was added, false if it already was contained in the table.
+     */
+    public boolean add(long key) {
+        if (find(key) >= 0) {
+            return false;
+        }
+        putNew(key, 0);
+        return true;
+    }
+
+    /**
+     * Adds a cell (with value 0) which is known not to be contained in the table, without looking it up first.
+     * @param key the packed cell key.
+     */
+    public void addNew(long key) {
+        assert find(key) < 0 : "cell already contained: " + key;
+        putNew(key, 0);
+    }
+
+    /**
+     * Adds cells (with value 0) to the table, growing the table at most once.
+     * @param keys the packed cell keys.
+     * @param count the number of keys to add, starting at index 0.
+     */
+    public void addAll(long[] keys, int count) {
+        // duplicates may make this grow too early, but never more than once
+        if (size + count > threshold) {
+            rehash(ceilPow2((int) Math.ceil((size + count) / loadFactor) + 1));
+        }
+        for (int i = 0; i < count; ++i) {
+            add(keys[i]);
+        }
+    }
+
+    /**
+     * Adds a cell to the table or updates its value if it already is contained in the table.
+     * @param key the packed cell key.
+     * @param value the value.
+     */
+    public void put(long key, int value) {
+        int idx = find(key);
+        if (idx >= 0) {
+            values[idx] = value;
+        } else {
+            putNew(key, value);
+        }
+    }
+
+    /**
+     * Increments the value of a cell, adding the cell with value 1 if it is not yet contained in the table.
+     * @param key the packed cell key.
+     * @return the incremented value.
+     */
+    public int increment(long key) {
+        int idx = find(key);
+        if (idx >= 0) {
+            return ++values[idx];
+        }
+        putNew(key, 1);
+        return 1;
+    }
+
+    /**
+     * Returns the value of a cell.
+     * @param key the packed cell key.
+     * @return the value or 0 if the table does not contain the cell.
+     */
+    public int get(long key) {
+        int idx = find(key);
+        return idx >= 0 ? values[idx] : 0;
+    }
+
+    /**
+     * Adds a cell which is not yet contained in the table, growing the table if necessary.
+     * @param key the packed cell key.
+     * @param value the value.
+     */
+    private void putNew(long key, int value) {
+        // grow and rehash if load factor reached defined threshold
+        if (size >= threshold) {
+            rehash();
+        }
+
+        insert(key, value);
+        ++size;
+    }
+
+    /**
+     * Inserts a key which is not yet contained in the table, without checking the load factor.
+     * @param key the key.
+     * @param value the value.
+     */
+    private void insert(long key, int value) {
+        int idx = hash(key) & mask;
+        int dist = 0;
+        long k;
+        while ((k = slots[idx]) != EMPTY) {
+            // swap elements if probe distance is higher (robin hood hashing)
+            int distElem = probeDist(k, idx);
+            if (distElem < dist) {
+                int v = values[idx];
+                slots[idx] = key;
+                values[idx] = value;
+                key = k;
+                value = v;
+                dist = distElem;
+            }
+            idx = (idx + 1) & mask;
+            ++dist;
+        }
+        slots[idx] = key;
+        values[idx] = value;
+    }
+
+    /**
+     * Checks if the table contains a cell.
+     * @param key the packed cell key.
+     * @return true if the table contains the cell, false otherwise.
+     */
+    public boolean contains(long key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * Removes a cell from the table (backward shift deletion).
+     * @param key the packed cell key.
+     * @return true if the cell was removed, false if the table did not contain it.
+     */
+    public boolean remove(long key) {
+        int idx = find(key);
+        if (idx < 0) {
+            return false;
+        }
+
+        // shift subsequent elements back by one slot until reaching an empty slot or an element in its desired slot
+        int next = (idx + 1) & mask;
+        long k;
+        while ((k = slots[next]) != EMPTY && probeDist(k, next) > 0) {
+            slots[idx] = k;
+            values[idx] = values[next];
+            idx = next;
+            next = (next + 1) & mask;
+        }
+        slots[idx] = EMPTY;
+
+        --size;
+        return true;
+    }
+
+    /**
+     * Removes all cells from the table, keeping the allocated slots.
+     */
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(slots, EMPTY);
+            size = 0;
+        }
+    }
+
+    /**
+     * Returns the number of cells in the table.
+     * @return the number of cells in the table.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of slots; slot indices for {@link #keyAt(int)} range from 0 to capacity() - 1.
+     * @return the number of slots.
+     */
+    public int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * Returns the key stored in a slot.
+     * @param slot the slot index.
+     * @return the packed cell key or {@link #EMPTY} if the slot is free.
+     */
+    public long keyAt(int slot) {
+        return slots[slot];
+    }
+
+    /**
+     * Returns the value stored in a slot.
+     * @param slot the slot index.
+     * @return the value of the cell in the slot, undefined if the slot is free.
+     */
+    public int valueAt(int slot) {
+        return values[slot];
+    }
+
+    /**
+     * Returns the probe distance of the cell stored in a slot, i.e. the distance between its desired and its actual
+     * slot.
+     * @param slot the slot index.
+     * @return the probe distance, undefined if the slot is free.
+     */
+    public int probeDistAt(int slot) {
+        return probeDist(slots[slot], slot);
+    }
+
+    /**
+     * Calculates a histogram of the probe distances of all stored cells.
+     * @return an array whose i-th element is the number of cells stored i slots away from their desired slot.
+     */
+    public int[] probeHistogram() {
+        int[] histogram = new int[maxProbeDist() + 1];
+        for (int idx = 0; idx < slots.length; ++idx) {
+            if (slots[idx] != EMPTY) {
+                histogram[probeDist(slots[idx], idx)]++;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Calculates the max. probe distance of all stored cells.
+     * @return the max. probe distance.
+     */
+    public int maxProbeDist() {
+        int max = 0;
+        for (int idx = 0; idx < slots.length; ++idx) {
+            if (slots[idx] != EMPTY) {
+                max = Math.max(max, probeDist(slots[idx], idx));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Calculates the mean probe distance of all stored cells.
+     * @return the mean probe distance.
+     */
+    public double meanProbeDist() {
+        long sum = 0;
+        for (int idx = 0; idx < slots.length; ++idx) {
+            if (slots[idx] != EMPTY) {
+                sum += probeDist(slots[idx], idx);
+            }
+        }
+        return size == 0 ? 0 : (double) sum / size;
+    }
+
+    /**
+     * Does nothing, the slots are reclaimed by the garbage collector.
+     */
+    public void close() {
+    }
+
+    /**
+     * Grows the slot array to twice its size and re-inserts all cells.
+     */
+    private void rehash() {
+        rehash(slots.length * 2);
+    }
+
+    /**
+     * Re-inserts all cells into new arrays of the given size.
+     * @param capacity the new number of slots, must be a power of two.
+     */
+    private void rehash(int capacity) {
+        LifeEvents.TableResize event = new LifeEvents.TableResize();
+        event.begin();
+        long[] oldSlots = slots;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int idx = 0; idx < oldSlots.length; ++idx) {
+            if (oldSlots[idx] != EMPTY) {
+                insert(oldSlots[idx], oldValues[idx]);
+            }
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.table = CellTable.class.getName();
+            event.entries = size;
+            event.oldCapacity = oldSlots.length;
+            event.newCapacity = capacity;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/**
+ * Detects when a sequence of generations becomes periodic, so the remaining generations can be skipped.
+ *
+ * Every generation is identified by a Zobrist fingerprint, the XOR of a pseudo random hash of each live cell (see
+ * {@link #cellHash(long)}). The fingerprint does not depend on the order of the cells, so it can be updated cell by
+ * cell while the next generation is built. Cycles are found by Brent's algorithm: a snapshot of the generation is
+ * taken at generations 0, 1, 2, 4, 8, ..., and every following generation is compared with the last snapshot, first
+ * by fingerprint, then (on a match) cell by cell. Once the snapshot lies within the cycle and the distance between
+ * snapshots is at least the period, the first match is exactly one period after the snapshot. So a cycle of period p
+ * starting at generation s is detected before generation 2 * max(s, p) + p, taking only one snapshot copy per doubling.
+ *
+ * Generations are also compared up to translation, so a pattern moving as a whole (e.g. a spaceship) is detected as
+ * well: if a generation has as many cells as the snapshot, both are normalized by the offset of their bounding box,
+ * i.e. compared by the fingerprints of their cells relative to the bounding box corner, then cell by cell.
+ * @see <a href="https://en.wikipedia.org/wiki/Cycle_detection#Brent's_algorithm">Brent's algorithm</a>
+ */
+public class CycleDetector {
+
+    /**
+     * The cells of the snapshot.
+     */
+    private final LongList snapshot = new LongList(1024);
+
+    /**
+     * The fingerprint of the snapshot.
+     */
+    private long snapshotFingerprint;
+
+    /**
+     * The generation of the snapshot.
+     */
+    private long snapshotGeneration = -1;
+
+    /**
+     * The generation at which the next snapshot is taken.
+     */
+    private long nextSnapshot;
+
+    /**
+     * The min. X coordinate of the cells of the snapshot.
+     */
+    private long snapshotMinX;
+
+    /**
+     * The min. Y coordinate of the cells of the snapshot.
+     */
+    private long snapshotMinY;
+
+    /**
+     * The fingerprint of the snapshot relative to its bounding box, see {@link #normalizedFingerprint(CellStore)}.
+     */
+    private long snapshotNormalized;
+
+    /**
+     * The X offset of the generation found by the last successful {@link #check} relative to the snapshot.
+     */
+    private long dx;
+
+    /**
+     * The Y offset of the generation found by the last successful {@link #check} relative to the snapshot.
+     */
+    private long dy;
+
+    /**
+     * The min. X coordinate found by the last call of {@link #normalizedFingerprint(CellStore)}.
+     */
+    private long minX;
+
+    /**
+     * The min. Y coordinate found by the last call of {@link #normalizedFingerprint(CellStore)}.
+     */
+    private long minY;
+
+    /**
+     * Calculates the Zobrist hash of a cell, a pseudo random 64 bit value (the finalizer of SplitMix64).
+     * @param key the packed cell key.
+     * @return the hash value.
+     */
+    static long cellHash(long key) {
+        long z = key + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Calculates the fingerprint of a generation from scratch.
+     * @param gen the generation.
+     * @return the XOR of the hashes of all cells.
+     */
+    static long fingerprint(CellStore gen) {
+        long fingerprint = 0;
+        for (int slot = 0; slot < gen.capacity(); ++slot) {
+            long key = gen.keyAt(slot);
+            if (key != CellTable.EMPTY) {
+                fingerprint ^= cellHash(key);
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Calculates the fingerprint of a generation relative to the corner of its bounding box, which does not change
+     * when the generation is translated. Sets {@link #minX} and {@link #minY}.
+     * @param gen the generation.
+     * @return the XOR of the hashes of all cells, translated by (-minX, -minY).
+     */
+    private long normalizedFingerprint(CellStore gen) {
+        minX = Long.MAX_VALUE;
+        minY = Long.MAX_VALUE;
+        for (int slot = 0; slot < gen.capacity(); ++slot) {
+            long key = gen.keyAt(slot);
+            if (key != CellTable.EMPTY) {
+                minX = Math.min(minX, CellTable.x(key));
+                minY = Math.min(minY, CellTable.y(key));
+            }
+        }
+        long fingerprint = 0;
+        for (int slot = 0; slot < gen.capacity(); ++slot) {
+            long key = gen.keyAt(slot);
+            if (key != CellTable.EMPTY) {
+                // packed by hand: the offsets may exceed the coordinate range of CellTable.key
+                fingerprint ^= cellHash((CellTable.x(key) - minX) << 32 | (CellTable.y(key) - minY));
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Checks a generation for a repetition of the last snapshot (possibly translated), taking a new snapshot if it is
+     * due. Must be called for consecutive generations, starting with generation 0.
+     * @param gen the generation.
+     * @param fingerprint the fingerprint of the generation.
+     * @param generation the number of the generation.
+     * @return the period, i.e. the distance to the identical earlier generation, or 0 if no cycle was detected yet;
+     *         the translation per period is returned by {@link #dx()} and {@link #dy()}.
+     */
+    public long check(CellStore gen, long fingerprint, long generation) {
+        if (snapshotGeneration >= 0 && gen.size() == snapshot.size()) {
+            if (fingerprint == snapshotFingerprint && sameCells(gen, 0, 0)) {
+                dx = 0;
+                dy = 0;
+                return generation - snapshotGeneration;
+            }
+            if (normalizedFingerprint(gen) == snapshotNormalized
+                    && sameCells(gen, minX - snapshotMinX, minY - snapshotMinY)) {
+                dx = minX - snapshotMinX;
+                dy = minY - snapshotMinY;
+                return generation - snapshotGeneration;
+            }
+        }
+        if (generation == nextSnapshot) {
+            takeSnapshot(gen, fingerprint, generation);
+            nextSnapshot = Math.max(2 * generation, 1);
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the X translation per period of the cycle found by the last successful {@link #check}.
+     * @return the X translation.
+     */
+    public long dx() {
+        return dx;
+    }
+
+    /**
+     * Returns the Y translation per period of the cycle found by the last successful {@link #check}.
+     * @return the Y translation.
+     */
+    public long dy() {
+        return dy;
+    }
+
+    /**
+     * Checks if a generation holds exactly the cells of the snapshot, translated by an offset.
+     * @param gen the generation, having as many cells as the snapshot.
+     * @param offsetX the X offset.
+     * @param offsetY the Y offset.
+     * @return true if the cells are the same, false otherwise.
+     */
+    private boolean sameCells(CellStore gen, long offsetX, long offsetY) {
+        for (int i = 0; i < snapshot.size(); ++i) {
+            long key = snapshot.get(i);
+            if (!gen.contains(CellTable.key(CellTable.x(key) + offsetX, CellTable.y(key) + offsetY))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies a generation into the snapshot.
+     * @param gen the generation.
+     * @param fingerprint the fingerprint of the generation.
+     * @param generation the number of the generation.
+     */
+    private void takeSnapshot(CellStore gen, long fingerprint, long generation) {
+        snapshot.clear();
+        for (int slot = 0; slot < gen.capacity(); ++slot) {
+            long key = gen.keyAt(slot);
+            if (key != CellTable.EMPTY) {
+                snapshot.add(key);
+            }
+        }
+        snapshotFingerprint = fingerprint;
+        snapshotGeneration = generation;
+        snapshotNormalized = normalizedFingerprint(gen);
+        snapshotMinX = minX;
+        snapshotMinY = minY;
+    }
+}
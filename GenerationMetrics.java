@@ -0,0 +1,281 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Records per generation metrics of a simulation into a ring buffer, keeping the most recent generations.
+ *
+ * The buffer is a single preallocated long array holding one row of {@link Column} values per generation, so
+ * recording a generation neither allocates nor synchronizes. A step is bracketed by {@link #startStep(long)} and
+ * {@link #endStep()}, which take the step time and the bytes allocated by the current thread and the workers set by
+ * {@link #setWorkers(List)} (via the {@code com.sun.management} extension of {@link ThreadMXBean}, where available);
+ * the simulation fills in the other columns by {@link #set(Column, long)} before the next step starts. Rows are
+ * dumped as CSV by {@link #writeCsv(Path)}, showing only the columns the simulation provides.
+ */
+public class GenerationMetrics {
+
+    /**
+     * Enum for the recorded values.
+     */
+    enum Column {
+        /**
+         * The number of the generation reached by the step.
+         */
+        GENERATION,
+        /**
+         * The number of live cells after the step.
+         */
+        POPULATION,
+        /**
+         * The number of cells born by the step.
+         */
+        BIRTHS,
+        /**
+         * The number of cells died by the step.
+         */
+        DEATHS,
+        /**
+         * The min. X coordinate of the live cells after the step.
+         */
+        MIN_X,
+        /**
+         * The min. Y coordinate of the live cells after the step.
+         */
+        MIN_Y,
+        /**
+         * The max. X coordinate of the live cells after the step.
+         */
+        MAX_X,
+        /**
+         * The max. Y coordinate of the live cells after the step.
+         */
+        MAX_Y,
+        /**
+         * The number of slots of the cell table holding the generation.
+         */
+        TABLE_SLOTS,
+        /**
+         * The sum of the probe distances of all cells in the cell table.
+         */
+        PROBE_SUM,
+        /**
+         * The max. probe distance in the cell table.
+         */
+        MAX_PROBE,
+        /**
+         * The number of canonical nodes (hashlife).
+         */
+        NODES,
+        /**
+         * The number of results found in the memo during the step (hashlife).
+         */
+        MEMO_HITS,
+        /**
+         * The number of results computed during the step (hashlife).
+         */
+        MEMO_MISSES,
+        /**
+         * The number of bytes allocated by the stepping thread and its workers during the step.
+         */
+        ALLOCATED_BYTES,
+        /**
+         * The duration of the step in nanoseconds.
+         */
+        STEP_NANOS;
+    }
+
+    /**
+     * The columns recorded by {@link Life}.
+     */
+    static final Set<Column> CELL_TABLE_COLUMNS = EnumSet.complementOf(
+            EnumSet.of(Column.NODES, Column.MEMO_HITS, Column.MEMO_MISSES));
+
+    /**
+     * The columns recorded by the hashlife {@code Universe}.
+     */
+    static final Set<Column> HASHLIFE_COLUMNS = EnumSet.complementOf(
+            EnumSet.of(Column.TABLE_SLOTS, Column.PROBE_SUM, Column.MAX_PROBE));
+
+    /**
+     * The number of values per row.
+     */
+    private static final int WIDTH = Column.values().length;
+
+    /**
+     * The columns written by {@link #writeCsv(Path)}.
+     */
+    private final Column[] columns;
+
+    /**
+     * The rows, {@link #WIDTH} values each.
+     */
+    private final long[] rows;
+
+    /**
+     * The max. number of rows kept.
+     */
+    private final int capacity;
+
+    /**
+     * The number of rows recorded so far (including overwritten ones).
+     */
+    private long count;
+
+    /**
+     * The offset of the current row in {@link #rows}.
+     */
+    private int row;
+
+    /**
+     * The thread bean used for measuring allocations, null if not supported.
+     */
+    private final com.sun.management.ThreadMXBean threads;
+
+    /**
+     * The worker threads computing a step on behalf of the current thread, see {@link #setWorkers(List)}.
+     */
+    private List<Thread> workers = Collections.emptyList();
+
+    /**
+     * The time the current step started.
+     */
+    private long startNanos;
+
+    /**
+     * The bytes allocated by the current thread and the workers before the current step started.
+     */
+    private long startBytes;
+
+    /**
+     * Constructor.
+     * @param capacity the max. number of generations kept.
+     * @param columns the columns written by {@link #writeCsv(Path)}.
+     */
+    public GenerationMetrics(int capacity, Set<Column> columns) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.rows = new long[capacity * WIDTH];
+        this.columns = columns.toArray(new Column[0]);
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            this.threads = (com.sun.management.ThreadMXBean) bean;
+            this.threads.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            this.threads = null;
+        }
+    }
+
+    /**
+     * Starts recording a step, beginning a new row (which overwrites the oldest one once the buffer is full). The row
+     * is cleared, so columns the simulation does not set for this step read 0.
+     * @param generation the number of the generation reached by the step.
+     */
+    public void startStep(long generation) {
+        row = (int) (count++ % capacity) * WIDTH;
+        Arrays.fill(rows, row, row + WIDTH, 0);
+        rows[row + Column.GENERATION.ordinal()] = generation;
+        startBytes = allocatedBytes();
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Finishes recording a step, setting {@link Column#STEP_NANOS} and {@link Column#ALLOCATED_BYTES}.
+     */
+    public void endStep() {
+        rows[row + Column.STEP_NANOS.ordinal()] = System.nanoTime() - startNanos;
+        rows[row + Column.ALLOCATED_BYTES.ordinal()] = allocatedBytes() - startBytes;
+    }
+
+    /**
+     * Sets a value of the current row.
+     * @param column the column.
+     * @param value the value.
+     */
+    public void set(Column column, long value) {
+        rows[row + column.ordinal()] = value;
+    }
+
+    /**
+     * Sets the worker threads whose allocations count towards {@link Column#ALLOCATED_BYTES}, besides the current
+     * thread (e.g. the pool of a parallel step).
+     * @param workers the worker threads, a live list which may grow between steps.
+     */
+    public void setWorkers(List<Thread> workers) {
+        this.workers = workers;
+    }
+
+    /**
+     * Returns the number of bytes allocated by the current thread and the workers so far. A worker started during a
+     * step counts all its allocations to that step; terminated workers are skipped, their allocations are lost (the
+     * pool only retires workers which have been idle for a while, i.e. between steps).
+     * @return the number of bytes, 0 if not supported.
+     */
+    private long allocatedBytes() {
+        if (threads == null) {
+            return 0;
+        }
+        long bytes = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < workers.size(); ++i) {
+            long workerBytes = threads.getThreadAllocatedBytes(workers.get(i).threadId());
+            if (workerBytes > 0) {
+                bytes += workerBytes;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the number of rows kept.
+     * @return the number of rows, at most the capacity.
+     */
+    public int size() {
+        return (int) Math.min(count, capacity);
+    }
+
+    /**
+     * Writes the rows kept, oldest first, to a CSV file with a header line.
+     * @param file the file.
+     * @throws UncheckedIOException if writing fails.
+     */
+    public void writeCsv(Path file) {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+            writeCsv(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the rows kept, oldest first, as CSV with a header line.
+     * @param out the writer.
+     * @throws IOException if writing fails.
+     */
+    public void writeCsv(Writer out) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (Column column : columns) {
+            line.append(line.length() > 0 ? "," : "").append(column.name().toLowerCase(Locale.ROOT));
+        }
+        out.write(line.append('\n').toString());
+        for (long r = count - size(); r < count; ++r) {
+            int offset = (int) (r % capacity) * WIDTH;
+            line.setLength(0);
+            for (Column column : columns) {
+                line.append(line.length() > 0 ? "," : "").append(rows[offset + column.ordinal()]);
+            }
+            out.write(line.append('\n').toString());
+        }
+    }
+}
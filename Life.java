@@ -1,8 +1,15 @@
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.PrintWriter;
-import java.util.HashMap;
-import java.util.Scanner;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 /**
  * Game-of-life implementation.
@@ -10,136 +17,273 @@ import java.util.Scanner;
 public class Life {
 
     /**
-     * A class representing 2D points.
+     * Enum for the strategy used to advance a generation.
      */
-    class Point2D {
+    enum StepMode {
         /**
-         * value of X coordinate.
+         * Checks all 9 cells around every live cell, counting each one's live neighbours by 8 lookups.
          */
-        long x;
+        CHECK_CELLS,
         /**
-         * value of Y coordinate.
+         * Accumulates the neighbour counts of all cells in a single pass over the live cells, then applies the
+         * rules in one sweep over the counts.
          */
-        long y;
-
+        NEIGHBOUR_COUNTS,
         /**
-         * Constructor.
-         * @param x X coordinate.
-         * @param y Y coordinate.
+         * Accumulates neighbour counts like {@link #NEIGHBOUR_COUNTS}, but in parallel over column stripes.
          */
-        public Point2D (long x, long y) {
-            this.x = x;
-            this.y = y;
-        }
+        PARALLEL_COUNTS;
+    }
 
-        /**
-         * Equals implementation.
-         * @param object the object to compare.
-         * @return true if the objects are considered equal, false otherwise.
-         */
-        public boolean equals(Object object) {
-            if (this == object) return true;
-            if (object == null || getClass() != object.getClass()) return false;
+    /**
+     * The strategy used to advance a generation.
+     */
+    private final StepMode mode;
 
-            Point2D point = (Point2D) object;
+    /**
+     * The name of the off-heap {@link CellStore} implementation, loaded on demand since it requires JDK 21 with
+     * preview features enabled.
+     */
+    private static final String OFF_HEAP_STORE = "OffHeapCellTable";
 
-            if (x != point.x) return false;
-            if (y != point.y) return false;
+    /**
+     * Cell table for current generation.
+     */
+    private CellStore genCurrent;
 
-            return true;
-        }
+    /**
+     * Cell table used for building the next generation.
+     */
+    private CellStore genNext;
 
-        /**
-         * Hash code implementation.
-         * @return the hash code.
-         */
-        public int hashCode() {
-            int result = 0;
-            result = 31 * result + (int) (x ^ (x >>> 32));
-            result = 31 * result + (int) (y ^ (y >>> 32));
-            return result;
-        }
-    }
+    /**
+     * Cell table holding the number of live neighbours per cell, used by {@link StepMode#NEIGHBOUR_COUNTS}.
+     */
+    private CellStore neighbourCounts;
 
     /**
-     * Enum for cell status.
+     * true if the cell tables are kept in native memory.
      */
-    enum Status {
-        DEAD, ALIVE;
-    }
+    private final boolean offHeap;
 
     /**
-     * A class representing a cell.
+     * The hash function of the cell tables.
      */
-    class Cell {
-        /**
-         * The coordinates.
-         */
-        Point2D coordinates;
-        /**
-         * The cell's status.
-         */
-        Status status;
+    private final CellHash hashing;
 
-        /**
-         * Constructor.
-         * @param coordinates the cell's coordinates.
-         * @param status the cell's status.
-         */
-        public Cell(Point2D coordinates, Status status) {
-            this.coordinates = coordinates;
-            this.status = status;
-        }
-    }
+    /**
+     * The parallel stepper, used by {@link StepMode#PARALLEL_COUNTS}.
+     */
+    private ParallelStep parallelStep;
 
     /**
-     * Hash map for current generation.
+     * The fingerprint of the current generation, see {@link CycleDetector}.
      */
-    private HashMap<Point2D, Cell> genCurrent;
+    private long fingerprint;
 
     /**
-     * Hash map used for building the next generation.
+     * The fingerprint of the next generation, updated while the next generation is built.
      */
-    private HashMap<Point2D, Cell> genNext;
+    private long fingerprintNext;
+
+    /**
+     * The number of live cells of the current generation surviving into the next one, counted while the next
+     * generation is built (for the births and deaths of the metrics).
+     */
+    private long survivors;
+
+    /**
+     * The number of generations advanced so far.
+     */
+    private long generation;
+
+    /**
+     * The metrics recorded per generation, null if not recording.
+     */
+    private GenerationMetrics metrics;
+
+    /**
+     * The number of generations kept by the metrics recorded by option -r.
+     */
+    private static final int METRICS_CAPACITY = 1 << 16;
 
     /**
      * Constructor.
      */
     public Life() {
-        this.genCurrent = new HashMap<>(2048);
-        this.genNext = new HashMap<>(2048);
+        this(StepMode.CHECK_CELLS);
     }
 
     /**
-     * Reads the initial cell generation from an input stream into the current generation map.
+     * Constructor.
+     * @param mode the strategy used to advance a generation.
+     */
+    public Life(StepMode mode) {
+        this(mode, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor.
+     * @param mode the strategy used to advance a generation.
+     * @param threads the number of threads used by {@link StepMode#PARALLEL_COUNTS}.
+     */
+    public Life(StepMode mode, int threads) {
+        this(mode, threads, false);
+    }
+
+    /**
+     * Constructor.
+     * @param mode the strategy used to advance a generation.
+     * @param threads the number of threads used by {@link StepMode#PARALLEL_COUNTS}.
+     * @param offHeap true to keep the cell tables in native memory (see {@link #OFF_HEAP_STORE}).
+     */
+    public Life(StepMode mode, int threads, boolean offHeap) {
+        this(mode, threads, offHeap, CellHash.FIBONACCI);
+    }
+
+    /**
+     * Constructor.
+     * @param mode the strategy used to advance a generation.
+     * @param threads the number of threads used by {@link StepMode#PARALLEL_COUNTS}.
+     * @param offHeap true to keep the cell tables in native memory (see {@link #OFF_HEAP_STORE}).
+     * @param hashing the hash function of the cell tables.
+     */
+    public Life(StepMode mode, int threads, boolean offHeap, CellHash hashing) {
+        this.mode = mode;
+        this.offHeap = offHeap;
+        this.hashing = hashing;
+        this.genCurrent = newStore(2048);
+        this.genNext = newStore(2048);
+        if (mode == StepMode.NEIGHBOUR_COUNTS) {
+            this.neighbourCounts = newStore(8192);
+        } else if (mode == StepMode.PARALLEL_COUNTS) {
+            this.parallelStep = new ParallelStep(threads);
+        }
+    }
+
+    /**
+     * Creates an empty cell table.
+     * @param capacity the initial number of slots.
+     * @return the cell table, either a {@link CellTable} or an instance of {@link #OFF_HEAP_STORE}.
+     * @throws UnsupportedOperationException if an off-heap table was requested but is not available.
+     */
+    private CellStore newStore(int capacity) {
+        if (!offHeap) {
+            return new CellTable(capacity, CellTable.DEFAULT_LOAD_FACTOR, hashing);
+        }
+        try {
+            return Class.forName(OFF_HEAP_STORE).asSubclass(CellStore.class)
+                    .getConstructor(int.class, float.class, CellHash.class)
+                    .newInstance(capacity, CellTable.DEFAULT_LOAD_FACTOR, hashing);
+        } catch (ClassNotFoundException | LinkageError | NoSuchMethodException | InstantiationException
+                | IllegalAccessException | InvocationTargetException e) {
+            throw new UnsupportedOperationException("off-heap cell tables are not available (JDK 21 with --enable-preview required)", e);
+        }
+    }
+
+    /**
+     * Reads the initial cell generation from an input stream into the current generation table.
      * @param inStream the input stream.
+     * @throws UncheckedIOException if reading fails or the input is malformed.
      */
     public void readLife(InputStream inStream) {
-        Scanner scanner = new Scanner(inStream);
-
-        // TODO: skip headers (see grammar in readlife.y)
+        readLife(Channels.newChannel(inStream));
+    }
 
-        while (scanner.hasNextLine()) {
-            long x = scanner.nextLong();
-            long y = scanner.nextLong();
+    /**
+     * Reads the initial cell generation from a channel into the current generation table, see {@link CellReader}.
+     * @param channel the channel.
+     * @throws UncheckedIOException if reading fails or the input is malformed.
+     */
+    public void readLife(ReadableByteChannel channel) {
+        LifeEvents.Read event = new LifeEvents.Read();
+        event.begin();
+        try {
+            new CellReader(channel).readCells(genCurrent::addAll);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        fingerprint = CycleDetector.fingerprint(genCurrent);
+        commitRead(event);
+    }
 
-            Cell c = new Cell(new Point2D(x, y), Status.ALIVE);
-            genCurrent.put(c.coordinates, c);
+    /**
+     * Reads the initial cell generation from a file into the current generation table, parsing it in parallel, see
+     * {@link MappedCellLoader}.
+     * @param file the file.
+     * @param threads the number of parser threads.
+     * @throws UncheckedIOException if reading fails or the input is malformed.
+     */
+    public void readLife(Path file, int threads) {
+        LifeEvents.Read event = new LifeEvents.Read();
+        event.begin();
+        try {
+            MappedCellLoader.load(file, threads, genCurrent::addAll);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        fingerprint = CycleDetector.fingerprint(genCurrent);
+        commitRead(event);
+    }
 
-            scanner.nextLine();
+    /**
+     * Commits the flight recorder event of reading the initial generation, if enabled.
+     * @param event the event, begun before reading.
+     */
+    private void commitRead(LifeEvents.Read event) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.cells = genCurrent.size();
+            event.commit();
         }
     }
 
     /**
-     * Writes the current cell generation to an output stream.
+     * Adds cells to the current generation.
+     * @param keys the cells, packed by {@link CellTable#key(long, long)}.
+     * @param count the number of cells.
+     */
+    public void addCells(long[] keys, int count) {
+        genCurrent.addAll(keys, count);
+        fingerprint = CycleDetector.fingerprint(genCurrent);
+    }
+
+    /**
+     * Writes the current cell generation to an output stream, sorted like sort(1) would, see
+     * {@link SortedCellWriter}.
      * @param outStream the output stream.
+     * @throws UncheckedIOException if writing fails.
      */
     public void writeLife(OutputStream outStream) {
-        PrintWriter writer = new PrintWriter(outStream);
-        for (Point2D p : genCurrent.keySet()) {
-            writer.format("%d %d%n", p.x, p.y);
+        writeLife(Channels.newChannel(outStream));
+    }
+
+    /**
+     * Writes the current cell generation to a channel, sorted like sort(1) would, see {@link SortedCellWriter}.
+     * @param channel the channel.
+     * @throws UncheckedIOException if writing fails.
+     */
+    public void writeLife(WritableByteChannel channel) {
+        LifeEvents.Write event = new LifeEvents.Write();
+        event.begin();
+        long[] cells = new long[genCurrent.size()];
+        int count = 0;
+        for (int slot = 0; slot < genCurrent.capacity(); ++slot) {
+            long key = genCurrent.keyAt(slot);
+            if (key != CellTable.EMPTY) {
+                cells[count++] = key;
+            }
+        }
+        try {
+            SortedCellWriter.write(cells, count, channel);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.cells = count;
+            event.commit();
         }
-        writer.flush();
     }
 
     /**
@@ -150,6 +294,44 @@ public class Life {
         return genCurrent.size();
     }
 
+    /**
+     * Releases the worker threads of {@link StepMode#PARALLEL_COUNTS} and the memory of the cell tables; the instance
+     * must not be used afterwards.
+     */
+    public void shutdown() {
+        if (parallelStep != null) {
+            parallelStep.shutdown();
+        }
+        genCurrent.close();
+        genNext.close();
+        if (neighbourCounts != null) {
+            neighbourCounts.close();
+        }
+    }
+
+    /**
+     * Starts or stops recording metrics for every generation computed.
+     * @param metrics the metrics receiving the values of {@link GenerationMetrics#CELL_TABLE_COLUMNS}, null to stop
+     *                recording.
+     */
+    public void setMetrics(GenerationMetrics metrics) {
+        this.metrics = metrics;
+        if (parallelStep != null) {
+            parallelStep.setCountSurvivors(metrics != null);
+            if (metrics != null) {
+                metrics.setWorkers(parallelStep.workers());
+            }
+        }
+    }
+
+    /**
+     * Returns the cell table of the current generation.
+     * @return the cell table of the current generation.
+     */
+    CellStore currentGeneration() {
+        return genCurrent;
+    }
+
     /**
      * Determines whether a cell at (x, y) is alive.
      * @param x the X coordinate.
@@ -157,15 +339,16 @@ public class Life {
      * @return 1 if the cell is alive, 0 otherwise.
      */
     private int alive(long x, long y) {
-        return genCurrent.containsKey(new Point2D(x, y)) ? 1 : 0;
+        return genCurrent.contains(CellTable.key(x, y)) ? 1 : 0;
     }
 
     /**
-     * Checks if a cell is alive in the next generation, and if so put the cell into the next generation map.
+     * Checks if a cell is alive in the next generation, and if so put the cell into the next generation table.
      * @param x the X coordinate of the cell.
      * @param y the Y coordinate of the cell.
+     * @return true if the cell is alive in the next generation.
      */
-    private void checkCell(long x, long y) {
+    private boolean checkCell(long x, long y) {
         int n = 0;
 
         n += alive(x-1, y-1);
@@ -178,32 +361,263 @@ public class Life {
         n += alive(x+1, y+1);
 
         if (n == 3 || (n == 2 && alive(x, y) == 1)) {
-            Cell c = new Cell(new Point2D(x, y), Status.ALIVE);
-            genNext.put(c.coordinates, c);
+            long key = CellTable.key(x, y);
+            if (genNext.add(key)) {
+                fingerprintNext ^= CycleDetector.cellHash(key);
+            }
+            return true;
         }
+        return false;
     }
 
     /**
      * Advance the current generation.
      */
     public void oneGeneration() {
-        for (Point2D p : genCurrent.keySet()) {
-            checkCell(p.x-1, p.y-1);
-            checkCell(p.x-1, p.y+0);
-            checkCell(p.x-1, p.y+1);
-            checkCell(p.x+0, p.y-1);
-            checkCell(p.x+0, p.y+0);
-            checkCell(p.x+0, p.y+1);
-            checkCell(p.x+1, p.y-1);
-            checkCell(p.x+1, p.y+0);
-            checkCell(p.x+1, p.y+1);
-        }
-
-        HashMap<Point2D, Cell> genTmp = genCurrent;
+        LifeEvents.Step event = new LifeEvents.Step();
+        event.begin();
+        fingerprintNext = 0;
+        survivors = 0;
+        if (metrics != null) {
+            metrics.startStep(generation + 1);
+        }
+        if (mode == StepMode.NEIGHBOUR_COUNTS) {
+            countGeneration();
+        } else if (mode == StepMode.PARALLEL_COUNTS) {
+            fingerprintNext = parallelStep.oneGeneration(genCurrent, genNext);
+            survivors = parallelStep.survivors();
+        } else {
+            checkGeneration();
+        }
+        if (metrics != null) {
+            metrics.endStep();
+            recordGeneration();
+        }
+
+        CellStore genTmp = genCurrent;
         genCurrent = genNext;
         genNext = genTmp;
+        fingerprint = fingerprintNext;
+
+        genNext.clear();
+        ++generation;
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.generation = generation;
+            event.stepSize = 1;
+            event.population = genCurrent.size();
+            event.commit();
+        }
+    }
+
+    /**
+     * Records the metrics of the next generation: births and deaths from the survivors counted by the step, the
+     * bounding box and probe distances in a single pass over the next generation table.
+     */
+    private void recordGeneration() {
+        long minX = Long.MAX_VALUE, minY = Long.MAX_VALUE, maxX = Long.MIN_VALUE, maxY = Long.MIN_VALUE;
+        long probes = 0;
+        int maxProbe = 0;
+        for (int slot = 0; slot < genNext.capacity(); ++slot) {
+            long key = genNext.keyAt(slot);
+            if (key == CellTable.EMPTY) {
+                continue;
+            }
+            minX = Math.min(minX, CellTable.x(key));
+            minY = Math.min(minY, CellTable.y(key));
+            maxX = Math.max(maxX, CellTable.x(key));
+            maxY = Math.max(maxY, CellTable.y(key));
+            int dist = genNext.probeDistAt(slot);
+            probes += dist;
+            maxProbe = Math.max(maxProbe, dist);
+        }
+        metrics.set(GenerationMetrics.Column.POPULATION, genNext.size());
+        metrics.set(GenerationMetrics.Column.BIRTHS, genNext.size() - survivors);
+        metrics.set(GenerationMetrics.Column.DEATHS, genCurrent.size() - survivors);
+        metrics.set(GenerationMetrics.Column.MIN_X, genNext.size() > 0 ? minX : 0);
+        metrics.set(GenerationMetrics.Column.MIN_Y, genNext.size() > 0 ? minY : 0);
+        metrics.set(GenerationMetrics.Column.MAX_X, genNext.size() > 0 ? maxX : 0);
+        metrics.set(GenerationMetrics.Column.MAX_Y, genNext.size() > 0 ? maxY : 0);
+        metrics.set(GenerationMetrics.Column.TABLE_SLOTS, genNext.capacity());
+        metrics.set(GenerationMetrics.Column.PROBE_SUM, probes);
+        metrics.set(GenerationMetrics.Column.MAX_PROBE, maxProbe);
+    }
+
+    /**
+     * Advances the current generation by a number of generations.
+     * @param generations the number of generations.
+     * @param detectCycles true to stop computing generations as soon as the generations repeat, skipping ahead by
+     *                     whole periods, see {@link CycleDetector}.
+     * @return the period of the cycle found or 0 if no cycle was detected (or detection was disabled).
+     */
+    public long advance(long generations, boolean detectCycles) {
+        return advance(generations, detectCycles, false);
+    }
 
+    /**
+     * Advances the current generation by a number of generations.
+     * @param generations the number of generations.
+     * @param detectCycles true to stop computing generations as soon as the generations repeat (possibly translated),
+     *                     skipping ahead by whole periods, see {@link CycleDetector}.
+     * @param trackSpaceships true to advance escaping spaceships analytically, see {@link SpaceshipTracker}.
+     * @return the period of the cycle found or 0 if no cycle was detected (or detection was disabled).
+     */
+    public long advance(long generations, boolean detectCycles, boolean trackSpaceships) {
+        SpaceshipTracker ships = trackSpaceships ? new SpaceshipTracker() : null;
+        CycleDetector cycles = detectCycles ? new CycleDetector() : null;
+        long cyclesStart = 0;
+        long period = 0;
+        for (long gen = 0; gen < generations; ++gen) {
+            if (ships != null && gen % SpaceshipTracker.INTERVAL == 0 && ships.update(genCurrent, gen)) {
+                // the simulated cells changed, start over
+                fingerprint = CycleDetector.fingerprint(genCurrent);
+                cycles = detectCycles ? new CycleDetector() : null;
+                cyclesStart = gen;
+            }
+            if (cycles != null) {
+                period = cycles.check(genCurrent, fingerprint, gen - cyclesStart);
+                if (period > 0) {
+                    if (ships == null || ships.safeForever(genCurrent, gen, cycles.dx(), cycles.dy(), period)) {
+                        long left = generations - gen;
+                        long periods = left / period;
+                        translate(Math.multiplyExact(periods, cycles.dx()), Math.multiplyExact(periods, cycles.dy()));
+                        generation += periods * period;
+                        for (left %= period; left > 0; --left) {
+                            oneGeneration();
+                        }
+                        break;
+                    }
+                    // spaceships might be caught up with, keep simulating
+                    period = 0;
+                    cycles = new CycleDetector();
+                    cyclesStart = gen;
+                }
+            }
+            oneGeneration();
+        }
+        if (ships != null) {
+            ships.restore(genCurrent, generations);
+            fingerprint = CycleDetector.fingerprint(genCurrent);
+        }
+        return period;
+    }
+
+    /**
+     * Moves all cells of the current generation.
+     * @param dx the X offset.
+     * @param dy the Y offset.
+     * @throws ArithmeticException if cells would leave the coordinate range read by {@link CellReader}.
+     */
+    private void translate(long dx, long dy) {
+        if (dx == 0 && dy == 0) {
+            return;
+        }
+        long minX = Long.MAX_VALUE, minY = Long.MAX_VALUE, maxX = Long.MIN_VALUE, maxY = Long.MIN_VALUE;
+        for (int slot = 0; slot < genCurrent.capacity(); ++slot) {
+            long key = genCurrent.keyAt(slot);
+            if (key != CellTable.EMPTY) {
+                minX = Math.min(minX, CellTable.x(key));
+                maxX = Math.max(maxX, CellTable.x(key));
+                minY = Math.min(minY, CellTable.y(key));
+                maxY = Math.max(maxY, CellTable.y(key));
+            }
+        }
+        // compared as offsets, the translated coordinates might overflow
+        if (dx < -CellReader.MAX_COORDINATE - minX || dx > CellReader.MAX_COORDINATE - maxX
+                || dy < -CellReader.MAX_COORDINATE - minY || dy > CellReader.MAX_COORDINATE - maxY) {
+            throw new ArithmeticException("moving the pattern by (" + dx + ", " + dy + ") leaves the coordinate range");
+        }
+        for (int slot = 0; slot < genCurrent.capacity(); ++slot) {
+            long key = genCurrent.keyAt(slot);
+            if (key != CellTable.EMPTY) {
+                genNext.add(CellTable.key(CellTable.x(key) + dx, CellTable.y(key) + dy));
+            }
+        }
+        CellStore genTmp = genCurrent;
+        genCurrent = genNext;
+        genNext = genTmp;
         genNext.clear();
+        fingerprint = CycleDetector.fingerprint(genCurrent);
+    }
+
+    /**
+     * Builds the next generation by checking all cells around each live cell.
+     */
+    private void checkGeneration() {
+        for (int slot = 0; slot < genCurrent.capacity(); ++slot) {
+            long key = genCurrent.keyAt(slot);
+            if (key == CellTable.EMPTY) {
+                continue;
+            }
+            long x = CellTable.x(key);
+            long y = CellTable.y(key);
+            checkCell(x-1, y-1);
+            checkCell(x-1, y+0);
+            checkCell(x-1, y+1);
+            checkCell(x+0, y-1);
+            if (checkCell(x+0, y+0)) {
+                ++survivors;
+            }
+            checkCell(x+0, y+1);
+            checkCell(x+1, y-1);
+            checkCell(x+1, y+0);
+            checkCell(x+1, y+1);
+        }
+    }
+
+    /**
+     * Builds the next generation from accumulated neighbour counts: every live cell increments the count of its 8
+     * neighbours, so each cell is looked up only once per live neighbour, instead of 9 times per live cell around it.
+     */
+    private void countGeneration() {
+        for (int slot = 0; slot < genCurrent.capacity(); ++slot) {
+            long key = genCurrent.keyAt(slot);
+            if (key == CellTable.EMPTY) {
+                continue;
+            }
+            long x = CellTable.x(key);
+            long y = CellTable.y(key);
+            neighbourCounts.increment(CellTable.key(x-1, y-1));
+            neighbourCounts.increment(CellTable.key(x-1, y+0));
+            neighbourCounts.increment(CellTable.key(x-1, y+1));
+            neighbourCounts.increment(CellTable.key(x+0, y-1));
+            neighbourCounts.increment(CellTable.key(x+0, y+1));
+            neighbourCounts.increment(CellTable.key(x+1, y-1));
+            neighbourCounts.increment(CellTable.key(x+1, y+0));
+            neighbourCounts.increment(CellTable.key(x+1, y+1));
+        }
+
+        // cells without live neighbours never survive, so sweeping the counts covers all cells of the next generation
+        for (int slot = 0; slot < neighbourCounts.capacity(); ++slot) {
+            long key = neighbourCounts.keyAt(slot);
+            if (key == CellTable.EMPTY) {
+                continue;
+            }
+            int n = neighbourCounts.valueAt(slot);
+            if (n == 3) {
+                genNext.add(key);
+                fingerprintNext ^= CycleDetector.cellHash(key);
+                // whether the cell survives rather than being born only matters for the metrics
+                if (metrics != null && genCurrent.contains(key)) {
+                    ++survivors;
+                }
+            } else if (n == 2 && genCurrent.contains(key)) {
+                genNext.add(key);
+                fingerprintNext ^= CycleDetector.cellHash(key);
+                ++survivors;
+            }
+        }
+
+        neighbourCounts.clear();
+    }
+
+    /**
+     * Prints the usage message and exits.
+     */
+    private static void usage() {
+        System.err.format("Usage: java %s [-m check|count|parallel] [-t #threads] [-s heap|offheap] [-h fibonacci|murmur|zorder|morton|point2d] [-c on|off] [-e on|off] [-r metricsfile] [-f startfile] #generations [<startfile] >endfile%nCoordinates must lie within [-2147483646, 2147483646]; a run stops with an error before a cell can leave [-2147483647, 2147483647].%n", Life.class.getName());
+        System.exit(1);
     }
 
     /**
@@ -211,25 +625,122 @@ public class Life {
      * @param args cmd line arguments
      */
     public static void main(String[] args) {
+        StepMode mode = StepMode.CHECK_CELLS;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean offHeap = false;
+        CellHash hashing = CellHash.FIBONACCI;
+        boolean detectCycles = false;
+        boolean trackSpaceships = false;
+        Path startFile = null;
+        Path metricsFile = null;
+
+        // parse options.
+        int argIdx = 0;
+        while (argIdx < args.length - 1 && args[argIdx].startsWith("-")) {
+            String option = args[argIdx++];
+            String value = args[argIdx++];
+            switch (option) {
+                case "-m":
+                    if (value.equals("check")) {
+                        mode = StepMode.CHECK_CELLS;
+                    } else if (value.equals("count")) {
+                        mode = StepMode.NEIGHBOUR_COUNTS;
+                    } else if (value.equals("parallel")) {
+                        mode = StepMode.PARALLEL_COUNTS;
+                    } else {
+                        usage();
+                    }
+                    break;
+                case "-t":
+                    threads = Integer.parseInt(value);
+                    if (threads < 1) {
+                        usage();
+                    }
+                    break;
+                case "-s":
+                    if (value.equals("heap")) {
+                        offHeap = false;
+                    } else if (value.equals("offheap")) {
+                        offHeap = true;
+                    } else {
+                        usage();
+                    }
+                    break;
+                case "-h":
+                    hashing = CellHash.forName(value);
+                    if (hashing == null) {
+                        usage();
+                    }
+                    break;
+                case "-c":
+                    if (value.equals("on")) {
+                        detectCycles = true;
+                    } else if (value.equals("off")) {
+                        detectCycles = false;
+                    } else {
+                        usage();
+                    }
+                    break;
+                case "-e":
+                    if (value.equals("on")) {
+                        trackSpaceships = true;
+                    } else if (value.equals("off")) {
+                        trackSpaceships = false;
+                    } else {
+                        usage();
+                    }
+                    break;
+                case "-r":
+                    metricsFile = Paths.get(value);
+                    break;
+                case "-f":
+                    startFile = Paths.get(value);
+                    break;
+                default:
+                    usage();
+            }
+        }
+
         // arguments checking.
-        if (args.length != 1) {
-            System.err.format("Usage: java %s #generations <startfile | sort >endfile%n", Life.class.getName());
+        if (argIdx != args.length - 1) {
+            usage();
         }
 
         // parse nr of generations.
-        long generations = Long.parseLong(args[0]);
-
-        Life life = new Life();
+        long generations = Long.parseLong(args[argIdx]);
+
+        Life life = null;
+        try {
+            life = new Life(mode, threads, offHeap, hashing);
+        } catch (UnsupportedOperationException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
 
         // read in initial generation.
-        life.readLife(System.in);
+        if (startFile != null) {
+            life.readLife(startFile, threads);
+        } else {
+            life.readLife(System.in);
+        }
+
+        GenerationMetrics metrics = null;
+        if (metricsFile != null) {
+            metrics = new GenerationMetrics(METRICS_CAPACITY, GenerationMetrics.CELL_TABLE_COLUMNS);
+            life.setMetrics(metrics);
+        }
 
         // advance generations.
-        for (long i = 0; i < generations; ++i) {
-            life.oneGeneration();
+        long period = life.advance(generations, detectCycles, trackSpaceships);
+        if (period > 0) {
+            System.err.format("cycle of period %d detected, remaining generations skipped%n", period);
         }
 
-        life.writeLife(System.out);
+        life.writeLife(new FileOutputStream(FileDescriptor.out).getChannel());
         System.err.format("%d cells alive%n", life.countCells());
+        if (metrics != null) {
+            metrics.writeCsv(metricsFile);
+        }
+        life.shutdown();
     }
 }
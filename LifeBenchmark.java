@@ -0,0 +1,834 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.Scanner;
+
+/**
+ * Micro benchmark comparing the cell table based {@link Life} step modes and {@link TileLife} with the original
+ * HashMap based implementation.
+ *
+ * For every start file it reports the time per generation (after a warm-up run) and the heap bytes retained per
+ * live cell by the generation data structures, as well as the probe distance statistics of the final cell table.
+ * With -suite it runs the forking {@link Suite} instead, which also covers parsing, output and the hashlife engine.
+ */
+public class LifeBenchmark {
+
+    /**
+     * The original HashMap&lt;Point2D, Cell&gt; based implementation, kept as a reference for comparison.
+     */
+    static class MapLife {
+
+        /**
+         * A class representing 2D points.
+         */
+        static class Point2D {
+            long x;
+            long y;
+
+            Point2D(long x, long y) {
+                this.x = x;
+                this.y = y;
+            }
+
+            public boolean equals(Object object) {
+                if (this == object) return true;
+                if (object == null || getClass() != object.getClass()) return false;
+                Point2D point = (Point2D) object;
+                return x == point.x && y == point.y;
+            }
+
+            public int hashCode() {
+                int result = 0;
+                result = 31 * result + (int) (x ^ (x >>> 32));
+                result = 31 * result + (int) (y ^ (y >>> 32));
+                return result;
+            }
+        }
+
+        /**
+         * Enum for cell status.
+         */
+        enum Status {
+            DEAD, ALIVE;
+        }
+
+        /**
+         * A class representing a cell.
+         */
+        static class Cell {
+            Point2D coordinates;
+            Status status;
+
+            Cell(Point2D coordinates, Status status) {
+                this.coordinates = coordinates;
+                this.status = status;
+            }
+        }
+
+        private HashMap<Point2D, Cell> genCurrent = new HashMap<>(2048);
+        private HashMap<Point2D, Cell> genNext = new HashMap<>(2048);
+
+        void readLife(InputStream inStream) {
+            Scanner scanner = new Scanner(inStream);
+            while (scanner.hasNextLine()) {
+                long x = scanner.nextLong();
+                long y = scanner.nextLong();
+                Cell c = new Cell(new Point2D(x, y), Status.ALIVE);
+                genCurrent.put(c.coordinates, c);
+                scanner.nextLine();
+            }
+        }
+
+        int countCells() {
+            return genCurrent.size();
+        }
+
+        private int alive(long x, long y) {
+            return genCurrent.containsKey(new Point2D(x, y)) ? 1 : 0;
+        }
+
+        private void checkCell(long x, long y) {
+            int n = alive(x-1, y-1) + alive(x-1, y+0) + alive(x-1, y+1) + alive(x+0, y-1) +
+                    alive(x+0, y+1) + alive(x+1, y-1) + alive(x+1, y+0) + alive(x+1, y+1);
+            if (n == 3 || (n == 2 && alive(x, y) == 1)) {
+                Cell c = new Cell(new Point2D(x, y), Status.ALIVE);
+                genNext.put(c.coordinates, c);
+            }
+        }
+
+        void oneGeneration() {
+            for (Point2D p : genCurrent.keySet()) {
+                for (long dx = -1; dx <= 1; ++dx) {
+                    for (long dy = -1; dy <= 1; ++dy) {
+                        checkCell(p.x + dx, p.y + dy);
+                    }
+                }
+            }
+            HashMap<Point2D, Cell> genTmp = genCurrent;
+            genCurrent = genNext;
+            genNext = genTmp;
+            genNext.clear();
+        }
+    }
+
+    /**
+     * Benchmark suite (-suite) for Life.oneGeneration, readLife and writeLife and for runStep, runHashlifeStep and
+     * traverse of the hashlife engines, following the JMH methodology (JMH itself does not support the default package
+     * all classes live in). Every benchmark runs in forked JVMs doing warm-up iterations (discarded) followed by the
+     * measurement iterations; an iteration sets up a fresh state (untimed), then times the operation. The score is the
+     * mean time per operation with the half width of its 99.9% confidence interval, written in the CSV layout of JMH's
+     * -rf csv.
+     *
+     * A fork reports its scores through a file, its standard output (where traverse and runHashlifeStep print) is
+     * discarded. The hashlife engines are loaded from hashlife/classes by their own class loader, as the hashlife
+     * sources define a second Life class.
+     */
+    static class Suite {
+
+        /**
+         * The directory of the compiled hashlife classes (make hashlife-classes).
+         */
+        private static final Path HASHLIFE_CLASSES = Paths.get("hashlife", "classes");
+
+        /**
+         * The hashlife engines, the default one first.
+         */
+        private static final String[] HASHLIFE_ENGINES = { "ArenaUniverse", "Universe" };
+
+        /**
+         * The 99.95% quantiles of Student's t distribution by degrees of freedom (1 .. 30).
+         */
+        private static final double[] T_QUANTILES = {
+            636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587,
+            4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850,
+            3.819, 3.792, 3.768, 3.745, 3.725, 3.707, 3.690, 3.674, 3.659, 3.646
+        };
+
+        /**
+         * A benchmark, setting up the state of an iteration.
+         */
+        interface Benchmark {
+            /**
+             * Sets up a fresh state.
+             * @param file the start file.
+             * @param generations the generation count parameter, 0 for benchmarks not taking it.
+             * @return the operation to time, returning the number of operations performed.
+             * @throws Exception if the setup fails.
+             */
+            Callable<Long> setup(Path file, int generations) throws Exception;
+        }
+
+        /**
+         * The benchmarks by name; the names ending in "Generation" or "runStep" take the generation count parameter.
+         */
+        private final Map<String, Benchmark> benchmarks = new LinkedHashMap<>();
+
+        /**
+         * The class loader of the hashlife classes, null if they are not available.
+         */
+        private final ClassLoader hashlife;
+
+        /**
+         * Constructor.
+         * @throws IOException if the hashlife class directory cannot be accessed.
+         */
+        Suite() throws IOException {
+            for (Life.StepMode mode : Life.StepMode.values()) {
+                benchmarks.put("Life.oneGeneration:" + mode.name().toLowerCase(Locale.ROOT), (file, generations) -> {
+                    Life life = readLife(file, mode);
+                    return () -> {
+                        for (int i = 0; i < generations; ++i) {
+                            life.oneGeneration();
+                        }
+                        return (long) generations;
+                    };
+                });
+            }
+            benchmarks.put("Life.readLife", (file, generations) -> () -> {
+                readLife(file, Life.StepMode.NEIGHBOUR_COUNTS);
+                return 1L;
+            });
+            benchmarks.put("Life.writeLife", (file, generations) -> {
+                Life life = readLife(file, Life.StepMode.NEIGHBOUR_COUNTS);
+                return () -> {
+                    life.writeLife(Channels.newChannel(OutputStream.nullOutputStream()));
+                    return 1L;
+                };
+            });
+
+            if (!Files.isDirectory(HASHLIFE_CLASSES)) {
+                System.err.format("hashlife classes not found in %s, skipping the hashlife benchmarks%n",
+                        HASHLIFE_CLASSES);
+                hashlife = null;
+                return;
+            }
+            // not delegating to the application class loader, which would resolve Life to our class
+            hashlife = new URLClassLoader(new URL[] { HASHLIFE_CLASSES.toUri().toURL() },
+                    ClassLoader.getPlatformClassLoader());
+            for (String engine : HASHLIFE_ENGINES) {
+                benchmarks.put(engine + ".runStep", (file, generations) -> {
+                    Object universe = readUniverse(engine, file);
+                    Method runStep = universe.getClass().getMethod("runStep");
+                    return () -> {
+                        for (int i = 0; i < generations; ++i) {
+                            invoke(runStep, universe);
+                        }
+                        return (long) generations;
+                    };
+                });
+                for (String operation : new String[] { "runHashlifeStep", "traverse" }) {
+                    benchmarks.put(engine + "." + operation, (file, generations) -> {
+                        Object universe = readUniverse(engine, file);
+                        Method method = universe.getClass().getMethod(operation);
+                        return () -> {
+                            invoke(method, universe);
+                            return 1L;
+                        };
+                    });
+                }
+            }
+        }
+
+        /**
+         * Checks if a benchmark takes the generation count parameter.
+         * @param name the benchmark name.
+         * @return true if it does.
+         */
+        private static boolean perGeneration(String name) {
+            return name.startsWith("Life.oneGeneration") || name.endsWith(".runStep");
+        }
+
+        /**
+         * Reads a start file into a new {@link Life} instance.
+         * @param file the start file.
+         * @param mode the step mode.
+         * @return the instance.
+         * @throws IOException if the file cannot be read.
+         */
+        private static Life readLife(Path file, Life.StepMode mode) throws IOException {
+            Life life = new Life(mode);
+            try (FileChannel channel = FileChannel.open(file)) {
+                life.readLife(channel);
+            }
+            return life;
+        }
+
+        /**
+         * Reads a start file into a new hashlife universe.
+         * @param engine the class name of the universe.
+         * @param file the start file.
+         * @return the universe.
+         * @throws Exception if the file cannot be read or the universe cannot be created.
+         */
+        private Object readUniverse(String engine, Path file) throws Exception {
+            LongList cells = new LongList(4096);
+            try (FileChannel channel = FileChannel.open(file)) {
+                new CellReader(channel).readCells(cells::addAll);
+            }
+            int[] coords = new int[2 * cells.size()];
+            for (int i = 0; i < cells.size(); ++i) {
+                coords[2 * i] = (int) CellTable.x(cells.get(i));
+                coords[2 * i + 1] = (int) CellTable.y(cells.get(i));
+            }
+            Class<?> universeClass = hashlife.loadClass(engine);
+            Object universe = universeClass.getConstructor().newInstance();
+            universeClass.getMethod("setBits", int[].class, int.class).invoke(universe, coords, cells.size());
+            return universe;
+        }
+
+        /**
+         * Invokes a method without arguments, unwrapping exceptions.
+         * @param method the method.
+         * @param target the target object.
+         * @throws Exception if the method fails.
+         */
+        private static void invoke(Method method, Object target) throws Exception {
+            try {
+                method.invoke(target);
+            } catch (InvocationTargetException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+
+        /**
+         * Runs the iterations of a benchmark in this JVM (the body of a fork), writing the score of each measurement
+         * iteration to a file.
+         * @param name the benchmark name.
+         * @param file the start file.
+         * @param generations the generation count parameter.
+         * @param warmups the number of warm-up iterations.
+         * @param iterations the number of measurement iterations.
+         * @param results the file receiving the scores in ns/op, one per line.
+         * @throws Exception if the benchmark fails.
+         */
+        private void runFork(String name, Path file, int generations, int warmups, int iterations, Path results)
+                throws Exception {
+            Benchmark benchmark = benchmarks.get(name);
+            List<String> scores = new ArrayList<>();
+            for (int i = 0; i < warmups + iterations; ++i) {
+                Callable<Long> operation = benchmark.setup(file, generations);
+                long start = System.nanoTime();
+                long ops = operation.call();
+                long elapsed = System.nanoTime() - start;
+                if (i >= warmups) {
+                    scores.add(Double.toString((double) elapsed / ops));
+                }
+            }
+            Files.write(results, scores, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Runs a benchmark in forked JVMs, started with the same JVM options as this one.
+         * @param name the benchmark name.
+         * @param file the start file.
+         * @param generations the generation count parameter.
+         * @param forks the number of forks.
+         * @param warmups the number of warm-up iterations per fork.
+         * @param iterations the number of measurement iterations per fork.
+         * @return the scores of all measurement iterations in ns/op.
+         * @throws IOException if a fork cannot be started or fails.
+         * @throws InterruptedException if interrupted while waiting for a fork.
+         */
+        private static List<Double> fork(String name, Path file, int generations, int forks, int warmups,
+                                         int iterations) throws IOException, InterruptedException {
+            Path results = Files.createTempFile("benchmark", ".txt");
+            List<String> command = new ArrayList<>();
+            command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+            command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+            command.addAll(List.of("-cp", System.getProperty("java.class.path"), LifeBenchmark.class.getName(),
+                    "-suite", "-fork", name, file.toString(), Integer.toString(generations), Integer.toString(warmups),
+                    Integer.toString(iterations), results.toString()));
+
+            List<Double> scores = new ArrayList<>();
+            try {
+                for (int f = 0; f < forks; ++f) {
+                    Process process = new ProcessBuilder(command).redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                            .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+                    if (process.waitFor() != 0) {
+                        throw new IOException("fork of " + name + " failed with exit code " + process.exitValue());
+                    }
+                    for (String line : Files.readAllLines(results, StandardCharsets.UTF_8)) {
+                        scores.add(Double.parseDouble(line));
+                    }
+                }
+            } finally {
+                Files.delete(results);
+            }
+            return scores;
+        }
+
+        /**
+         * Calculates the half width of the 99.9% confidence interval of the mean.
+         * @param scores the scores.
+         * @param mean the mean of the scores.
+         * @return the error, NaN for less than two scores.
+         */
+        private static double error(List<Double> scores, double mean) {
+            int n = scores.size();
+            if (n < 2) {
+                return Double.NaN;
+            }
+            double sum = 0;
+            for (double score : scores) {
+                sum += (score - mean) * (score - mean);
+            }
+            double t = n - 1 <= T_QUANTILES.length ? T_QUANTILES[n - 2] : 3.291;
+            return t * Math.sqrt(sum / (n - 1)) / Math.sqrt(n);
+        }
+
+        /**
+         * Quotes a CSV field.
+         * @param field the field.
+         * @return the quoted field.
+         */
+        private static String quote(String field) {
+            return '"' + field.replace("\"", "\"\"") + '"';
+        }
+
+        /**
+         * Prints the usage message and exits.
+         */
+        private static void usage() {
+            System.err.format("Usage: java -Xss64m %s -suite [-f #forks] [-wi #warmup iterations] [-i #iterations] "
+                    + "[-g #generations,...] [-o csvfile] startfile...%n", LifeBenchmark.class.getName());
+            System.exit(1);
+        }
+
+        /**
+         * Runs the suite (or, with -fork, the body of a fork).
+         * @param args the cmd line arguments following -suite.
+         * @throws Exception if a benchmark fails.
+         */
+        static void run(String[] args) throws Exception {
+            if (args.length == 7 && args[0].equals("-fork")) {
+                new Suite().runFork(args[1], Paths.get(args[2]), Integer.parseInt(args[3]), Integer.parseInt(args[4]),
+                        Integer.parseInt(args[5]), Paths.get(args[6]));
+                return;
+            }
+
+            int forks = 2;
+            int warmups = 3;
+            int iterations = 5;
+            String generationCounts = "10,100";
+            Path csv = Paths.get("measurements", "benchmarks.csv");
+
+            // parse options.
+            int argIdx = 0;
+            while (argIdx < args.length - 1 && args[argIdx].startsWith("-")) {
+                String option = args[argIdx++];
+                String value = args[argIdx++];
+                switch (option) {
+                    case "-f":
+                        forks = Integer.parseInt(value);
+                        break;
+                    case "-wi":
+                        warmups = Integer.parseInt(value);
+                        break;
+                    case "-i":
+                        iterations = Integer.parseInt(value);
+                        break;
+                    case "-g":
+                        generationCounts = value;
+                        break;
+                    case "-o":
+                        csv = Paths.get(value);
+                        break;
+                    default:
+                        usage();
+                }
+            }
+            if (argIdx == args.length || forks < 1 || warmups < 0 || iterations < 1) {
+                usage();
+            }
+
+            Suite suite = new Suite();
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(csv, StandardCharsets.UTF_8))) {
+                out.println("\"Benchmark\",\"Mode\",\"Threads\",\"Samples\",\"Score\",\"Score Error (99.9%)\",\"Unit\","
+                        + "\"Param: file\",\"Param: generations\"");
+                for (String name : suite.benchmarks.keySet()) {
+                    String[] counts = perGeneration(name) ? generationCounts.split(",") : new String[] { "0" };
+                    for (int i = argIdx; i < args.length; ++i) {
+                        Path file = Paths.get(args[i]);
+                        for (String count : counts) {
+                            int generations = Integer.parseInt(count.trim());
+                            List<Double> scores = fork(name, file, generations, forks, warmups, iterations);
+                            double mean = scores.stream().mapToDouble(Double::doubleValue).average().orElse(Double.NaN);
+                            double error = error(scores, mean);
+                            System.out.format("%-32s %-10s %6d gens %14.1f +- %12.1f ns/op (%d samples)%n",
+                                    name, file.getFileName(), generations, mean, error, scores.size());
+                            out.format(Locale.ROOT, "%s,\"avgt\",1,%d,%.6f,%.6f,\"ns/op\",%s,%d%n", quote(name),
+                                    scores.size(), mean, error, quote(file.getFileName().toString()), generations);
+                            out.flush();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the currently used heap memory after forcing garbage collection.
+     * @return the used heap memory in bytes.
+     */
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 4; ++i) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    /**
+     * Benchmarks the original HashMap based implementation.
+     * @param file the start file.
+     * @param generations the number of generations to measure.
+     * @throws IOException if the start file cannot be read.
+     */
+    private static void benchmarkMap(String file, int generations) throws IOException {
+        MapLife warmup = new MapLife();
+        try (InputStream in = new FileInputStream(file)) {
+            warmup.readLife(in);
+        }
+        for (int i = 0; i < generations; ++i) {
+            warmup.oneGeneration();
+        }
+        warmup = null;
+
+        long heapBefore = usedHeap();
+        MapLife life = new MapLife();
+        try (InputStream in = new FileInputStream(file)) {
+            life.readLife(in);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < generations; ++i) {
+            life.oneGeneration();
+        }
+        long elapsed = System.nanoTime() - start;
+        long bytes = usedHeap() - heapBefore;
+
+        report("HashMap", file, generations, elapsed, bytes, life.countCells());
+    }
+
+    /**
+     * Benchmarks the cell table based implementation.
+     * @param file the start file.
+     * @param generations the number of generations to measure.
+     * @param mode the strategy used to advance a generation.
+     * @param offHeap true to keep the cell tables in native memory.
+     * @param hashing the hash function of the cell tables.
+     * @throws IOException if the start file cannot be read.
+     */
+    private static void benchmarkCellTable(String file, int generations, Life.StepMode mode, boolean offHeap,
+                                           CellHash hashing) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        Life warmup = new Life(mode, threads, offHeap, hashing);
+        try (InputStream in = new FileInputStream(file)) {
+            warmup.readLife(in);
+        }
+        for (int i = 0; i < generations; ++i) {
+            warmup.oneGeneration();
+        }
+        warmup.shutdown();
+        warmup = null;
+
+        long heapBefore = usedHeap();
+        Life life = new Life(mode, threads, offHeap, hashing);
+        try (InputStream in = new FileInputStream(file)) {
+            life.readLife(in);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < generations; ++i) {
+            life.oneGeneration();
+        }
+        long elapsed = System.nanoTime() - start;
+        long bytes = usedHeap() - heapBefore;
+
+        String impl = (mode == Life.StepMode.CHECK_CELLS ? "CellTable" : "Counts")
+                + (hashing == CellHash.FIBONACCI ? "" : "/" + hashing.name().toLowerCase(Locale.ROOT));
+        report(offHeap ? impl + "/off" : impl, file, generations, elapsed, bytes, life.countCells());
+
+        CellStore tbl = life.currentGeneration();
+        System.out.format("%-10s %-10s probe distance mean %.3f, max %d, histogram %s%n", "", file,
+                tbl.meanProbeDist(), tbl.maxProbeDist(), Arrays.toString(tbl.probeHistogram()));
+        System.out.format("%-10s %-10s neighbour lookups starting in the cell's cache line %.1f%%%n", "", file,
+                100 * neighbourLocality(tbl, hashing));
+        life.shutdown();
+    }
+
+    /**
+     * Estimates the cache locality of neighbour lookups: the share of the neighbours of all live cells whose desired
+     * slot lies in the same cache line (8 slots) as the desired slot of the cell itself.
+     * @param tbl the cell table.
+     * @param hashing the hash function of the table.
+     * @return the share of neighbour lookups in [0, 1].
+     */
+    private static double neighbourLocality(CellStore tbl, CellHash hashing) {
+        int mask = tbl.capacity() - 1;
+        long local = 0, total = 0;
+        for (int slot = 0; slot < tbl.capacity(); ++slot) {
+            long key = tbl.keyAt(slot);
+            if (key == CellTable.EMPTY) {
+                continue;
+            }
+            long x = CellTable.x(key);
+            long y = CellTable.y(key);
+            int line = (hashing.hash(key, 0) & mask) >>> 3;
+            for (long nx = x - 1; nx <= x + 1; ++nx) {
+                for (long ny = y - 1; ny <= y + 1; ++ny) {
+                    if (nx == x && ny == y) {
+                        continue;
+                    }
+                    long n = CellTable.key(nx, ny);
+                    int nLine = (hashing.hash(n, 0) & mask) >>> 3;
+                    if (nLine == line) {
+                        ++local;
+                    }
+                    ++total;
+                }
+            }
+        }
+        return total == 0 ? 0 : (double) local / total;
+    }
+
+    /**
+     * Compares the hash functions of the cell tables on each start file, in both cell table step modes.
+     * @param files the start files.
+     * @param generations the number of generations to measure.
+     * @throws IOException if a start file cannot be read.
+     */
+    private static void benchmarkHashes(String[] files, int generations) throws IOException {
+        for (String file : files) {
+            for (Life.StepMode mode : new Life.StepMode[] {Life.StepMode.CHECK_CELLS, Life.StepMode.NEIGHBOUR_COUNTS}) {
+                for (CellHash hashing : CellHash.values()) {
+                    benchmarkCellTable(file, generations, mode, false, hashing);
+                }
+            }
+        }
+    }
+
+    /**
+     * Benchmarks the bitboard tile implementation.
+     * @param file the start file.
+     * @param generations the number of generations to measure.
+     * @param trackActivity true to update only tiles next to changes.
+     * @param kernel the row kernel.
+     * @param impl the implementation name to report.
+     * @throws IOException if the start file cannot be read.
+     */
+    private static void benchmarkTiles(String file, int generations, boolean trackActivity, RowKernel kernel, String impl)
+            throws IOException {
+        TileLife warmup = new TileLife(trackActivity, kernel);
+        try (InputStream in = new FileInputStream(file)) {
+            warmup.readLife(in);
+        }
+        for (int i = 0; i < generations; ++i) {
+            warmup.oneGeneration();
+        }
+        warmup = null;
+
+        long heapBefore = usedHeap();
+        TileLife life = new TileLife(trackActivity, kernel);
+        try (InputStream in = new FileInputStream(file)) {
+            life.readLife(in);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < generations; ++i) {
+            life.oneGeneration();
+        }
+        long elapsed = System.nanoTime() - start;
+        long bytes = usedHeap() - heapBefore;
+
+        report(impl, file, generations, elapsed, bytes, life.countCells());
+    }
+
+    /**
+     * Benchmarks a row kernel in isolation on random rows of the given density.
+     * @param name the kernel name to report.
+     * @param kernel the row kernel.
+     * @param density the probability of a cell being alive.
+     * @param iterations the number of tiles to compute.
+     */
+    private static void benchmarkKernel(String name, RowKernel kernel, double density, int iterations) {
+        Random random = new Random(42);
+        long[] west = new long[TileLife.TILE_SIZE + 2];
+        long[] center = new long[TileLife.TILE_SIZE + 2];
+        long[] east = new long[TileLife.TILE_SIZE + 2];
+        long[] out = new long[TileLife.TILE_SIZE];
+        for (int i = 0; i < center.length; ++i) {
+            for (int bit = 0; bit < 64; ++bit) {
+                if (random.nextDouble() < density) {
+                    center[i] |= 1L << bit;
+                }
+            }
+            west[i] = center[i] << 1;
+            east[i] = center[i] >>> 1;
+        }
+
+        long checksum = 0;
+        for (int pass = 0; pass < 2; ++pass) { // 1st pass: warm-up
+            long start = System.nanoTime();
+            for (int n = 0; n < iterations; ++n) {
+                // feed the result back so the computation cannot be hoisted out of the loop
+                center[1 + (n & 63)] ^= out[n & 63];
+                kernel.step(west, center, east, out);
+                checksum += out[0];
+            }
+            long elapsed = System.nanoTime() - start;
+            if (pass == 1) {
+                System.out.format("%-10s density %.2f %10d tiles %8.1f ns/tile %8.0f Mcells/s (checksum %x)%n",
+                        name, density, iterations, (double) elapsed / iterations,
+                        (double) iterations * TileLife.TILE_SIZE * TileLife.TILE_SIZE / elapsed * 1e3, checksum);
+            }
+        }
+    }
+
+    /**
+     * Compares the scalar and the vector API row kernels, in isolation and in {@link TileLife}.
+     * @param files the start files.
+     * @param generations the number of generations to measure.
+     * @throws IOException if a start file cannot be read.
+     */
+    private static void benchmarkKernels(String[] files, int generations) throws IOException {
+        RowKernel vector = TileLife.vectorKernel();
+        if (vector == null) {
+            System.out.println("vector kernel not available (requires --add-modules jdk.incubator.vector)");
+        }
+        for (double density : new double[] { 0.1, 0.5 }) {
+            benchmarkKernel("scalar", TileLife.SCALAR_KERNEL, density, 2_000_000);
+            if (vector != null) {
+                benchmarkKernel("vector", vector, density, 2_000_000);
+            }
+        }
+        for (String file : files) {
+            benchmarkTiles(file, generations, false, TileLife.SCALAR_KERNEL, "Tiles");
+            if (vector != null) {
+                benchmarkTiles(file, generations, false, vector, "Tiles/vec");
+            }
+        }
+    }
+
+    /**
+     * Measures the strong scaling of the parallel step mode, i.e. the speedup over 1 thread for a fixed problem.
+     * @param file the start file.
+     * @param generations the number of generations to measure.
+     * @param maxThreads the max. number of threads.
+     * @throws IOException if the start file cannot be read.
+     */
+    private static void benchmarkScaling(String file, int generations, int maxThreads) throws IOException {
+        double baseline = 0;
+        for (int threads = 1; ; threads = Math.min(threads * 2, maxThreads)) {
+            Life warmup = new Life(Life.StepMode.PARALLEL_COUNTS, threads);
+            try (InputStream in = new FileInputStream(file)) {
+                warmup.readLife(in);
+            }
+            for (int i = 0; i < generations; ++i) {
+                warmup.oneGeneration();
+            }
+            warmup.shutdown();
+
+            Life life = new Life(Life.StepMode.PARALLEL_COUNTS, threads);
+            try (InputStream in = new FileInputStream(file)) {
+                life.readLife(in);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < generations; ++i) {
+                life.oneGeneration();
+            }
+            double nsPerGen = (double) (System.nanoTime() - start) / generations;
+            life.shutdown();
+
+            if (threads == 1) {
+                baseline = nsPerGen;
+            }
+            System.out.format("%-10s %-10s %6d gens %3d threads %12.0f ns/gen %6.2fx speedup%n",
+                    "Parallel", file, generations, threads, nsPerGen, baseline / nsPerGen);
+
+            if (threads >= maxThreads) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Prints a single result line.
+     */
+    private static void report(String impl, String file, int generations, long elapsedNanos, long bytes, int cells) {
+        System.out.format("%-10s %-10s %6d gens %12.0f ns/gen %8d cells %8.1f bytes/cell%n",
+                impl, file, generations, (double) elapsedNanos / generations, cells, (double) bytes / Math.max(cells, 1));
+    }
+
+    /**
+     * main().
+     * @param args cmd line arguments
+     * @throws Exception if a benchmark fails.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 1 && args[0].equals("-suite")) {
+            Suite.run(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        if (args.length >= 3 && args[0].equals("-scaling")) {
+            int maxThreads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+            benchmarkScaling(args[2], Integer.parseInt(args[1]), maxThreads);
+            return;
+        }
+
+        if (args.length >= 3 && args[0].equals("-kernels")) {
+            benchmarkKernels(Arrays.copyOfRange(args, 2, args.length), Integer.parseInt(args[1]));
+            return;
+        }
+
+        if (args.length >= 3 && args[0].equals("-hashes")) {
+            benchmarkHashes(Arrays.copyOfRange(args, 2, args.length), Integer.parseInt(args[1]));
+            return;
+        }
+
+        if (args.length < 2) {
+            System.err.format("Usage: java %s #generations startfile...%n", LifeBenchmark.class.getName());
+            System.err.format("       java %s -hashes #generations startfile...%n", LifeBenchmark.class.getName());
+            System.err.format("       java %s -scaling #generations startfile [max #threads]%n", LifeBenchmark.class.getName());
+            System.err.format("       java --add-modules jdk.incubator.vector %s -kernels #generations startfile...%n", LifeBenchmark.class.getName());
+            System.err.format("       java -Xss64m %s -suite [options] startfile...%n", LifeBenchmark.class.getName());
+            System.exit(1);
+        }
+
+        int generations = Integer.parseInt(args[0]);
+        for (int i = 1; i < args.length; ++i) {
+            benchmarkMap(args[i], generations);
+            benchmarkCellTable(args[i], generations, Life.StepMode.CHECK_CELLS, false, CellHash.FIBONACCI);
+            benchmarkCellTable(args[i], generations, Life.StepMode.CHECK_CELLS, false, CellHash.ZORDER);
+            benchmarkCellTable(args[i], generations, Life.StepMode.NEIGHBOUR_COUNTS, false, CellHash.FIBONACCI);
+            benchmarkCellTable(args[i], generations, Life.StepMode.NEIGHBOUR_COUNTS, false, CellHash.ZORDER);
+            try {
+                benchmarkCellTable(args[i], generations, Life.StepMode.NEIGHBOUR_COUNTS, true, CellHash.FIBONACCI);
+            } catch (UnsupportedOperationException e) {
+                System.out.format("%-10s %-10s skipped: %s%n", "Counts/off", args[i], e.getMessage());
+            }
+            benchmarkTiles(args[i], generations, false, TileLife.bestKernel(), "Tiles");
+            benchmarkTiles(args[i], generations, true, TileLife.bestKernel(), "Tiles -a");
+        }
+    }
+}
@@ -0,0 +1,181 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The JDK Flight Recorder events of the simulation phases, emitted by {@link Life} and the hashlife
+ * {@code Universe} / {@code TreeNode}.
+ *
+ * The events are disabled unless a recording enables them, e.g. by
+ * {@code java -XX:StartFlightRecording:filename=life.jfr,settings=profile Life ...}; all of them are enabled by
+ * default in a recording, so they show up in JMC under "Game of Life" next to the JVM's own events. A disabled event
+ * costs a check of {@link Event#shouldCommit()}, allocating it is optimized away by the JIT compiler.
+ */
+public final class LifeEvents {
+
+    /**
+     * No instances.
+     */
+    private LifeEvents() {
+    }
+
+    /**
+     * Reading the initial generation.
+     */
+    @Name("life.Read")
+    @Label("Read Generation")
+    @Category("Game of Life")
+    @StackTrace(false)
+    public static final class Read extends Event {
+
+        /**
+         * The number of live cells read.
+         */
+        @Label("Cells")
+        public long cells;
+    }
+
+    /**
+     * Computing one step (a generation, or 2^(level-2) generations by a hashlife step).
+     */
+    @Name("life.Step")
+    @Label("Step")
+    @Category("Game of Life")
+    @StackTrace(false)
+    public static final class Step extends Event {
+
+        /**
+         * The number of the generation reached by the step.
+         */
+        @Label("Generation")
+        public long generation;
+
+        /**
+         * The number of generations advanced by the step.
+         */
+        @Label("Step Size")
+        public long stepSize;
+
+        /**
+         * The number of live cells after the step.
+         */
+        @Label("Population")
+        public long population;
+
+        /**
+         * The level of the hashlife root after the step, 0 for {@link Life}.
+         */
+        @Label("Level")
+        public int level;
+
+        /**
+         * The number of canonical hashlife nodes after the step, 0 for {@link Life}.
+         */
+        @Label("Nodes")
+        public long nodes;
+    }
+
+    /**
+     * The memo statistics of a hashlife step.
+     */
+    @Name("life.Memo")
+    @Label("Memo Summary")
+    @Category("Game of Life")
+    @Description("Results found in / computed for the memo of the tree nodes during a hashlife step")
+    @StackTrace(false)
+    public static final class Memo extends Event {
+
+        /**
+         * The level of the hashlife root stepped.
+         */
+        @Label("Level")
+        public int level;
+
+        /**
+         * The number of results found in the memo.
+         */
+        @Label("Hits")
+        public long hits;
+
+        /**
+         * The number of results computed.
+         */
+        @Label("Misses")
+        public long misses;
+    }
+
+    /**
+     * Growing a hash table: a {@link CellTable} / {@code OffHeapCellTable} rehashing, or the hashlife canonical node
+     * table crossing its resize threshold.
+     */
+    @Name("life.TableResize")
+    @Label("Table Resize")
+    @Category("Game of Life")
+    public static final class TableResize extends Event {
+
+        /**
+         * The name of the table class.
+         */
+        @Label("Table")
+        public String table;
+
+        /**
+         * The number of entries in the table.
+         */
+        @Label("Entries")
+        public long entries;
+
+        /**
+         * The number of slots before growing.
+         */
+        @Label("Old Capacity")
+        public long oldCapacity;
+
+        /**
+         * The number of slots after growing.
+         */
+        @Label("New Capacity")
+        public long newCapacity;
+    }
+
+    /**
+     * Dropping the hashlife nodes no longer reachable from the root from the canonical node table.
+     */
+    @Name("life.NodeCollection")
+    @Label("Node Collection")
+    @Category("Game of Life")
+    @StackTrace(false)
+    public static final class NodeCollection extends Event {
+
+        /**
+         * The number of canonical nodes before the collection.
+         */
+        @Label("Nodes Before")
+        public long nodesBefore;
+
+        /**
+         * The number of canonical nodes kept.
+         */
+        @Label("Nodes After")
+        public long nodesAfter;
+    }
+
+    /**
+     * Writing the final generation.
+     */
+    @Name("life.Write")
+    @Label("Write Generation")
+    @Category("Game of Life")
+    @StackTrace(false)
+    public static final class Write extends Event {
+
+        /**
+         * The number of live cells written.
+         */
+        @Label("Cells")
+        public long cells;
+    }
+}
@@ -0,0 +1,81 @@
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive longs, reusable across generations without reallocation.
+ */
+public class LongList {
+
+    /**
+     * The elements (only the first {@link #size} are valid).
+     */
+    private long[] elems;
+
+    /**
+     * The number of elements in the list.
+     */
+    private int size;
+
+    /**
+     * Constructor.
+     * @param capacity the initial capacity.
+     */
+    public LongList(int capacity) {
+        this.elems = new long[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Appends an element.
+     * @param value the element.
+     */
+    public void add(long value) {
+        if (size == elems.length) {
+            elems = Arrays.copyOf(elems, size * 2);
+        }
+        elems[size++] = value;
+    }
+
+    /**
+     * Appends elements.
+     * @param values the elements.
+     * @param count the number of elements to append, starting at index 0.
+     */
+    public void addAll(long[] values, int count) {
+        if (size + count > elems.length) {
+            elems = Arrays.copyOf(elems, Math.max(size + count, size * 2));
+        }
+        System.arraycopy(values, 0, elems, size, count);
+        size += count;
+    }
+
+    /**
+     * Returns an element.
+     * @param idx the index.
+     * @return the element at the given index.
+     */
+    public long get(int idx) {
+        return elems[idx];
+    }
+
+    /**
+     * Returns the backing array, valid up to index {@link #size()} - 1 until the list is modified.
+     * @return the backing array.
+     */
+    long[] elements() {
+        return elems;
+    }
+
+    /**
+     * Returns the number of elements.
+     * @return the number of elements.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all elements, keeping the allocated capacity.
+     */
+    public void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,136 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads cell files (see {@link CellReader} for the format) by memory mapping and parsing them in parallel.
+ *
+ * The file is split into line-aligned chunks which are mapped and parsed independently by a pool of threads, each
+ * into its own buffer. The buffers are passed on to the sink in file order as soon as they are complete, so inserting
+ * the cells of one chunk overlaps with parsing the following ones. At most one chunk per thread is submitted ahead of
+ * the one being passed on, and each buffer is dropped once passed on, so the parsed copy of the file never holds
+ * more than threads + 1 chunks.
+ */
+public class MappedCellLoader {
+
+    /**
+     * The max. size of a chunk in bytes (a single mapping is limited to 2 GB).
+     */
+    private static final long MAX_CHUNK_SIZE = 64L << 20;
+
+    /**
+     * The size of the blocks read while searching for line breaks.
+     */
+    private static final int SCAN_SIZE = 4096;
+
+    /**
+     * Static methods only.
+     */
+    private MappedCellLoader() {
+    }
+
+    /**
+     * Loads a cell file.
+     * @param file the file.
+     * @param threads the number of parser threads.
+     * @param sink the sink receiving the cells, called from the calling thread only.
+     * @throws IOException if reading fails or the file is malformed.
+     */
+    public static void load(Path file, int threads, CellReader.CellSink sink) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int chunks = (int) Math.max(threads, (size + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+
+            // chunk i spans bounds[i] to bounds[i + 1]; empty chunks are possible for small files
+            long[] bounds = new long[chunks + 1];
+            for (int i = 1; i < chunks; ++i) {
+                bounds[i] = Math.max(bounds[i - 1], lineStart(channel, size * i / chunks, size));
+            }
+            bounds[chunks] = size;
+
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                Deque<Future<LongList>> inFlight = new ArrayDeque<>(threads + 1);
+                int next = 0;
+                while (next < chunks || !inFlight.isEmpty()) {
+                    for (; next < chunks && inFlight.size() <= threads; ++next) {
+                        long from = bounds[next];
+                        long to = bounds[next + 1];
+                        inFlight.add(pool.submit(() -> parse(channel, from, to)));
+                    }
+                    LongList cells = inFlight.remove().get();
+                    sink.addCells(cells.elements(), cells.size());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while loading " + file, e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw new IOException(file + ", " + e.getCause().getMessage(), e.getCause());
+                }
+                throw new IOException("failed to load " + file, e.getCause());
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Finds the start of the first line beginning at or after a position.
+     * @param channel the file channel.
+     * @param pos the position.
+     * @param size the file size.
+     * @return the position of the line start, or the file size if no line starts at or after the position.
+     * @throws IOException if reading fails.
+     */
+    private static long lineStart(FileChannel channel, long pos, long size) throws IOException {
+        if (pos == 0) {
+            return 0;
+        }
+        ByteBuffer block = ByteBuffer.allocate(SCAN_SIZE);
+        // a line starts at pos if the preceding byte is a line break
+        for (long blockPos = pos - 1; blockPos < size; blockPos += block.limit()) {
+            block.clear();
+            if (channel.read(block, blockPos) <= 0) {
+                break;
+            }
+            block.flip();
+            for (int i = 0; i < block.limit(); ++i) {
+                if (block.get(i) == '\n') {
+                    return blockPos + i + 1;
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Maps and parses a chunk of the file.
+     * @param channel the file channel.
+     * @param from the position of the first byte of the chunk (a line start).
+     * @param to the position after the last byte of the chunk (a line start or the file size).
+     * @return the cells of the chunk.
+     * @throws IOException if reading fails or the chunk is malformed.
+     */
+    private static LongList parse(FileChannel channel, long from, long to) throws IOException {
+        LongList cells = new LongList((int) Math.min((to - from) / 8, 1 << 24));
+        if (to > from) {
+            MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+            try {
+                new CellReader(chunk).readCells(cells::addAll);
+            } catch (IOException e) {
+                throw new IOException("chunk at byte " + from + ": " + e.getMessage(), e);
+            }
+        }
+        return cells;
+    }
+}
@@ -0,0 +1,503 @@
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+/**
+ * An off-heap variant of {@link CellTable}: the same robin hood hash table, but keys and values are kept in native
+ * memory segments instead of Java arrays.
+ *
+ * The heap footprint of the table is constant regardless of the number of cells, and the garbage collector never
+ * has to scan or copy the slots. Memory is managed explicitly: every slot array lives in its own shared arena, which
+ * is closed as soon as the table grows or is closed itself.
+ */
+public class OffHeapCellTable implements CellStore {
+
+    /**
+     * The key marking an empty slot, see {@link CellTable#EMPTY}.
+     */
+    private static final long EMPTY = CellTable.EMPTY;
+
+    /**
+     * The arena owning the current slot segments.
+     */
+    private Arena arena;
+
+    /**
+     * The slots, either holding a packed cell key or {@link #EMPTY} (one long per slot).
+     */
+    private MemorySegment slots;
+
+    /**
+     * The values of the cells stored in the corresponding slots (one int per slot).
+     */
+    private MemorySegment values;
+
+    /**
+     * The number of slots.
+     */
+    private int capacity;
+
+    /**
+     * Bit mask for mapping hash values to slot indices (the no. of slots - 1).
+     */
+    private int mask;
+
+    /**
+     * The max. load factor controlling growing + rehashing.
+     */
+    private final float loadFactor;
+
+    /**
+     * The hash function.
+     */
+    private final CellHash hashing;
+
+    /**
+     * The hash seed of this table, see {@link CellTable}.
+     */
+    private final long seed = CellTable.nextSeed();
+
+    /**
+     * The no. of elements that triggers the next growth step.
+     */
+    private int threshold;
+
+    /**
+     * The number of cells currently stored in the table.
+     */
+    private int size;
+
+    /**
+     * Constructor.
+     * @param capacity the initial number of slots (rounded up to the next power of two).
+     */
+    public OffHeapCellTable(int capacity) {
+        this(capacity, CellTable.DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Constructor.
+     * @param capacity the initial number of slots (rounded up to the next power of two).
+     * @param loadFactor a factor in (0, 1) controlling growing / rehashing of the table.
+     */
+    public OffHeapCellTable(int capacity, float loadFactor) {
+        this(capacity, loadFactor, CellHash.FIBONACCI);
+    }
+
+    /**
+     * Constructor.
+     * @param capacity the initial number of slots (rounded up to the next power of two).
+     * @param loadFactor a factor in (0, 1) controlling growing / rehashing of the table.
+     * @param hashing the hash function.
+     */
+    public OffHeapCellTable(int capacity, float loadFactor, CellHash hashing) {
+        if (loadFactor <= 0 || loadFactor >= 1) {
+            throw new IllegalArgumentException("load factor must be in (0, 1): " + loadFactor);
+        }
+        this.loadFactor = loadFactor;
+        this.hashing = hashing;
+        allocate(Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1);
+    }
+
+    /**
+     * Calculates the hash value of a key, see {@link CellTable}.
+     * @param key the key.
+     * @return the hash value.
+     */
+    private int hash(long key) {
+        return hashing.hash(key, seed);
+    }
+
+    /**
+     * Allocates new, empty slot segments in a new arena.
+     * @param capacity the number of slots, must be a power of two.
+     */
+    private void allocate(int capacity) {
+        arena = Arena.ofShared();
+        slots = arena.allocate((long) capacity * Long.BYTES, Long.BYTES);
+        values = arena.allocate((long) capacity * Integer.BYTES, Integer.BYTES);
+        fillEmpty();
+        this.capacity = capacity;
+        mask = capacity - 1;
+        threshold = (int) (capacity * loadFactor);
+    }
+
+    /**
+     * Marks all slots as free.
+     */
+    private void fillEmpty() {
+        long n = slots.byteSize() / Long.BYTES;
+        for (long idx = 0; idx < n; ++idx) {
+            slots.setAtIndex(ValueLayout.JAVA_LONG, idx, EMPTY);
+        }
+    }
+
+    /**
+     * Reads the key of a slot.
+     * @param idx the slot index.
+     * @return the key.
+     */
+    private long slot(int idx) {
+        return slots.getAtIndex(ValueLayout.JAVA_LONG, idx);
+    }
+
+    /**
+     * Writes the key of a slot.
+     * @param idx the slot index.
+     * @param key the key.
+     */
+    private void setSlot(int idx, long key) {
+        slots.setAtIndex(ValueLayout.JAVA_LONG, idx, key);
+    }
+
+    /**
+     * Reads the value of a slot.
+     * @param idx the slot index.
+     * @return the value.
+     */
+    private int value(int idx) {
+        return values.getAtIndex(ValueLayout.JAVA_INT, idx);
+    }
+
+    /**
+     * Writes the value of a slot.
+     * @param idx the slot index.
+     * @param value the value.
+     */
+    private void setValue(int idx, int value) {
+        values.setAtIndex(ValueLayout.JAVA_INT, idx, value);
+    }
+
+    /**
+     * Calculates the probe distance of a key, i.e. the distance between its desired and its actual slot.
+     * @param key the key.
+     * @param idx the actual slot index.
+     * @return the probe distance.
+     */
+    private int probeDist(long key, int idx) {
+        return (idx - hash(key)) & mask;
+    }
+
+    /**
+     * Looks up the slot of a key.
+     * @param key the key.
+     * @return the slot index or -1 if the table does not contain the key.
+     */
+    private int find(long key) {
+        int idx = hash(key) & mask;
+        int dist = 0;
+        long k;
+        while ((k = slot(idx)) != EMPTY) {
+            if (k == key) {
+                return idx;
+            }
+            // stop searching when we found an element with lower probe distance
+            if (probeDist(k, idx) < dist) {
+                break;
+            }
+            idx = (idx + 1) & mask; // linear probing
+            ++dist;
+        }
+        return -1;
+    }
+
+    /**
+     * Adds a cell to the table.
+     * @param key the packed cell key.
+     * @return true if the cell was added, false if it already was contained in the table.
+     */
+    public boolean add(long key) {
+        if (find(key) >= 0) {
+            return false;
+        }
+        putNew(key, 0);
+        return true;
+    }
+
+    /**
+     * Adds a cell (with value 0) which is known not to be contained in the table, without looking it up first.
+     * @param key the packed cell key.
+     */
+    public void addNew(long key) {
+        assert find(key) < 0 : "cell already contained: " + key;
+        putNew(key, 0);
+    }
+
+    /**
+     * Adds cells (with value 0) to the table, growing the table at most once.
+     * @param keys the packed cell keys.
+     * @param count the number of keys to add, starting at index 0.
+     */
+    public void addAll(long[] keys, int count) {
+        // duplicates may make this grow too early, but never more than once
+        if (size + count > threshold) {
+            int n = (int) Math.ceil((size + count) / loadFactor) + 1;
+            rehash(Integer.highestOneBit(n - 1) << 1);
+        }
+        for (int i = 0; i < count; ++i) {
+            add(keys[i]);
+        }
+    }
+
+    /**
+     * Adds a cell to the table or updates its value if it already is contained in the table.
+     * @param key the packed cell key.
+     * @param value the value.
+     */
+    public void put(long key, int value) {
+        int idx = find(key);
+        if (idx >= 0) {
+            setValue(idx, value);
+        } else {
+            putNew(key, value);
+        }
+    }
+
+    /**
+     * Increments the value of a cell, adding the cell with value 1 if it is not yet contained in the table.
+     * @param key the packed cell key.
+     * @return the incremented value.
+     */
+    public int increment(long key) {
+        int idx = find(key);
+        if (idx >= 0) {
+            int value = value(idx) + 1;
+            setValue(idx, value);
+            return value;
+        }
+        putNew(key, 1);
+        return 1;
+    }
+
+    /**
+     * Returns the value of a cell.
+     * @param key the packed cell key.
+     * @return the value or 0 if the table does not contain the cell.
+     */
+    public int get(long key) {
+        int idx = find(key);
+        return idx >= 0 ? value(idx) : 0;
+    }
+
+    /**
+     * Adds a cell which is not yet contained in the table, growing the table if necessary.
+     * @param key the packed cell key.
+     * @param value the value.
+     */
+    private void putNew(long key, int value) {
+        // grow and rehash if load factor reached defined threshold
+        if (size >= threshold) {
+            rehash();
+        }
+
+        insert(key, value);
+        ++size;
+    }
+
+    /**
+     * Inserts a key which is not yet contained in the table, without checking the load factor.
+     * @param key the key.
+     * @param value the value.
+     */
+    private void insert(long key, int value) {
+        int idx = hash(key) & mask;
+        int dist = 0;
+        long k;
+        while ((k = slot(idx)) != EMPTY) {
+            // swap elements if probe distance is higher (robin hood hashing)
+            int distElem = probeDist(k, idx);
+            if (distElem < dist) {
+                int v = value(idx);
+                setSlot(idx, key);
+                setValue(idx, value);
+                key = k;
+                value = v;
+                dist = distElem;
+            }
+            idx = (idx + 1) & mask;
+            ++dist;
+        }
+        setSlot(idx, key);
+        setValue(idx, value);
+    }
+
+    /**
+     * Checks if the table contains a cell.
+     * @param key the packed cell key.
+     * @return true if the table contains the cell, false otherwise.
+     */
+    public boolean contains(long key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * Removes a cell from the table (backward shift deletion).
+     * @param key the packed cell key.
+     * @return true if the cell was removed, false if the table did not contain it.
+     */
+    public boolean remove(long key) {
+        int idx = find(key);
+        if (idx < 0) {
+            return false;
+        }
+
+        // shift subsequent elements back by one slot until reaching an empty slot or an element in its desired slot
+        int next = (idx + 1) & mask;
+        long k;
+        while ((k = slot(next)) != EMPTY && probeDist(k, next) > 0) {
+            setSlot(idx, k);
+            setValue(idx, value(next));
+            idx = next;
+            next = (next + 1) & mask;
+        }
+        setSlot(idx, EMPTY);
+
+        --size;
+        return true;
+    }
+
+    /**
+     * Removes all cells from the table, keeping the allocated segments.
+     */
+    public void clear() {
+        if (size > 0) {
+            fillEmpty();
+            size = 0;
+        }
+    }
+
+    /**
+     * Returns the number of cells in the table.
+     * @return the number of cells in the table.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of slots; slot indices for {@link #keyAt(int)} range from 0 to capacity() - 1.
+     * @return the number of slots.
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the key stored in a slot.
+     * @param slot the slot index.
+     * @return the packed cell key or {@link CellTable#EMPTY} if the slot is free.
+     */
+    public long keyAt(int slot) {
+        return slot(slot);
+    }
+
+    /**
+     * Returns the value stored in a slot.
+     * @param slot the slot index.
+     * @return the value of the cell in the slot, undefined if the slot is free.
+     */
+    public int valueAt(int slot) {
+        return value(slot);
+    }
+
+    /**
+     * Returns the probe distance of the cell stored in a slot, i.e. the distance between its desired and its actual
+     * slot.
+     * @param slot the slot index.
+     * @return the probe distance, undefined if the slot is free.
+     */
+    public int probeDistAt(int slot) {
+        return probeDist(slot(slot), slot);
+    }
+
+    /**
+     * Calculates a histogram of the probe distances of all stored cells.
+     * @return an array whose i-th element is the number of cells stored i slots away from their desired slot.
+     */
+    public int[] probeHistogram() {
+        int[] histogram = new int[maxProbeDist() + 1];
+        for (int idx = 0; idx < capacity; ++idx) {
+            long k = slot(idx);
+            if (k != EMPTY) {
+                histogram[probeDist(k, idx)]++;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Calculates the max. probe distance of all stored cells.
+     * @return the max. probe distance.
+     */
+    public int maxProbeDist() {
+        int max = 0;
+        for (int idx = 0; idx < capacity; ++idx) {
+            long k = slot(idx);
+            if (k != EMPTY) {
+                max = Math.max(max, probeDist(k, idx));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Calculates the mean probe distance of all stored cells.
+     * @return the mean probe distance.
+     */
+    public double meanProbeDist() {
+        long sum = 0;
+        for (int idx = 0; idx < capacity; ++idx) {
+            long k = slot(idx);
+            if (k != EMPTY) {
+                sum += probeDist(k, idx);
+            }
+        }
+        return size == 0 ? 0 : (double) sum / size;
+    }
+
+    /**
+     * Frees the native memory of the table by closing its arena; the table must not be used afterwards.
+     */
+    public void close() {
+        if (arena != null) {
+            arena.close();
+            arena = null;
+        }
+    }
+
+    /**
+     * Grows the slot segments to twice their size, re-inserts all cells and frees the old segments.
+     */
+    private void rehash() {
+        rehash(capacity * 2);
+    }
+
+    /**
+     * Re-inserts all cells into new segments of the given size and frees the old segments.
+     * @param newCapacity the new number of slots, must be a power of two.
+     */
+    private void rehash(int newCapacity) {
+        LifeEvents.TableResize event = new LifeEvents.TableResize();
+        event.begin();
+        Arena oldArena = arena;
+        MemorySegment oldSlots = slots;
+        MemorySegment oldValues = values;
+        int oldCapacity = capacity;
+        allocate(newCapacity);
+        for (int idx = 0; idx < oldCapacity; ++idx) {
+            long k = oldSlots.getAtIndex(ValueLayout.JAVA_LONG, idx);
+            if (k != EMPTY) {
+                insert(k, oldValues.getAtIndex(ValueLayout.JAVA_INT, idx));
+            }
+        }
+        oldArena.close();
+        event.end();
+        if (event.shouldCommit()) {
+            event.table = OffHeapCellTable.class.getName();
+            event.entries = size;
+            event.oldCapacity = oldCapacity;
+            event.newCapacity = newCapacity;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,296 @@
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes the next generation of a {@link CellStore} in parallel using a {@link ForkJoinPool}.
+ *
+ * The plane is split into stripes of 64 columns each, assigned round-robin to a fixed number of partitions. A
+ * generation is computed in three phases:
+ * 1. scatter (parallel over slot ranges of the current generation): each live cell is appended to the buffers of
+ *    the partitions owning one of its neighbouring columns x-1 .. x+1.
+ * 2. step (parallel over partitions): each partition accumulates the neighbour counts of its own columns in a
+ *    private table and applies the rules, appending the surviving / born cells to a private result buffer.
+ * 3. merge (sequential): the result buffers are added to the next generation table, calculating its fingerprint.
+ * All buffers and tables are owned by exactly one task per phase, so no locks are needed; the current generation
+ * table is only read during phases 1 and 2.
+ */
+public class ParallelStep {
+
+    /**
+     * log2 of the width of a stripe in columns.
+     */
+    private static final int STRIPE_SHIFT = 6;
+
+    /**
+     * The pool executing the tasks.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * The worker threads started by the pool so far (including terminated ones).
+     */
+    private final List<Thread> workers = new CopyOnWriteArrayList<>();
+
+    /**
+     * The number of partitions (= the number of scatter / step tasks).
+     */
+    private final int partitions;
+
+    /**
+     * The scatter buffers; cells[t][p] holds the cells found by scatter task t for partition p.
+     */
+    private final LongList[][] cells;
+
+    /**
+     * The neighbour count table of each partition.
+     */
+    private final CellTable[] counts;
+
+    /**
+     * The cells of the next generation found by each partition.
+     */
+    private final LongList[] results;
+
+    /**
+     * The number of live cells surviving the last step in each partition, see {@link #setCountSurvivors(boolean)}.
+     */
+    private final long[] survivors;
+
+    /**
+     * true to count the surviving cells born with 3 neighbours, too (which takes a lookup each).
+     */
+    private boolean countSurvivors;
+
+    /**
+     * The generation currently being advanced.
+     */
+    private CellStore genCurrent;
+
+    /**
+     * Constructor.
+     * @param threads the number of worker threads.
+     */
+    public ParallelStep(int threads) {
+        this.pool = new ForkJoinPool(threads, p -> {
+            ForkJoinWorkerThread worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            workers.add(worker);
+            return worker;
+        }, null, false);
+        this.partitions = threads;
+        this.cells = new LongList[partitions][partitions];
+        this.counts = new CellTable[partitions];
+        this.results = new LongList[partitions];
+        this.survivors = new long[partitions];
+        for (int t = 0; t < partitions; ++t) {
+            for (int p = 0; p < partitions; ++p) {
+                cells[t][p] = new LongList(1024);
+            }
+            counts[t] = new CellTable(4096);
+            results[t] = new LongList(1024);
+        }
+    }
+
+    /**
+     * Returns the partition owning a column.
+     * @param x the X coordinate of the column.
+     * @return the partition index.
+     */
+    private int partition(long x) {
+        return (int) Math.floorMod(x >> STRIPE_SHIFT, (long) partitions);
+    }
+
+    /**
+     * Computes the next generation.
+     * @param genCurrent the current generation (read only).
+     * @param genNext the (empty) table receiving the next generation.
+     * @return the fingerprint of the next generation, see {@link CycleDetector}.
+     */
+    public long oneGeneration(CellStore genCurrent, CellStore genNext) {
+        this.genCurrent = genCurrent;
+
+        pool.invoke(new RangeTask(0, partitions, true));
+        pool.invoke(new RangeTask(0, partitions, false));
+
+        long fingerprint = 0;
+        for (int p = 0; p < partitions; ++p) {
+            LongList result = results[p];
+            for (int i = 0; i < result.size(); ++i) {
+                long key = result.get(i);
+                // every column is owned by one partition, so the keys are unique
+                genNext.addNew(key);
+                fingerprint ^= CycleDetector.cellHash(key);
+            }
+        }
+
+        this.genCurrent = null;
+        return fingerprint;
+    }
+
+    /**
+     * Enables counting all surviving cells, see {@link #survivors()}.
+     * @param countSurvivors true to count the survivors.
+     */
+    public void setCountSurvivors(boolean countSurvivors) {
+        this.countSurvivors = countSurvivors;
+    }
+
+    /**
+     * Returns the number of live cells surviving the last step; only complete if enabled by
+     * {@link #setCountSurvivors(boolean)}.
+     * @return the number of survivors.
+     */
+    public long survivors() {
+        long sum = 0;
+        for (long s : survivors) {
+            sum += s;
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the worker threads started so far; the pool starts them on demand, so the list may grow with each step.
+     * @return a read only view of the worker threads.
+     */
+    public List<Thread> workers() {
+        return Collections.unmodifiableList(workers);
+    }
+
+    /**
+     * Shuts down the worker threads.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Scatters the live cells of a slot range of the current generation to the partitions.
+     * @param t the index of the scatter task.
+     */
+    private void scatter(int t) {
+        LongList[] buffers = cells[t];
+        for (LongList buffer : buffers) {
+            buffer.clear();
+        }
+
+        int capacity = genCurrent.capacity();
+        int from = (int) ((long) capacity * t / partitions);
+        int to = (int) ((long) capacity * (t + 1) / partitions);
+        for (int slot = from; slot < to; ++slot) {
+            long key = genCurrent.keyAt(slot);
+            if (key == CellTable.EMPTY) {
+                continue;
+            }
+            long x = CellTable.x(key);
+            // stripes are wider than 3 columns, so columns x-1 .. x+1 span at most two partitions
+            int west = partition(x - 1);
+            int east = partition(x + 1);
+            buffers[west].add(key);
+            if (east != west) {
+                buffers[east].add(key);
+            }
+        }
+    }
+
+    /**
+     * Computes the next generation of the columns owned by a partition.
+     * @param p the partition index.
+     */
+    private void step(int p) {
+        CellTable neighbourCounts = counts[p];
+        LongList result = results[p];
+        result.clear();
+
+        for (int t = 0; t < partitions; ++t) {
+            LongList buffer = cells[t][p];
+            for (int i = 0; i < buffer.size(); ++i) {
+                long key = buffer.get(i);
+                long x = CellTable.x(key);
+                long y = CellTable.y(key);
+                for (long nx = x - 1; nx <= x + 1; ++nx) {
+                    if (partition(nx) != p) {
+                        continue;
+                    }
+                    if (nx != x) {
+                        neighbourCounts.increment(CellTable.key(nx, y));
+                    }
+                    neighbourCounts.increment(CellTable.key(nx, y - 1));
+                    neighbourCounts.increment(CellTable.key(nx, y + 1));
+                }
+            }
+        }
+
+        long survived = 0;
+        for (int slot = 0; slot < neighbourCounts.capacity(); ++slot) {
+            long key = neighbourCounts.keyAt(slot);
+            if (key == CellTable.EMPTY) {
+                continue;
+            }
+            int n = neighbourCounts.valueAt(slot);
+            if (n == 3) {
+                result.add(key);
+                if (countSurvivors && genCurrent.contains(key)) {
+                    ++survived;
+                }
+            } else if (n == 2 && genCurrent.contains(key)) {
+                result.add(key);
+                ++survived;
+            }
+        }
+        survivors[p] = survived;
+
+        neighbourCounts.clear();
+    }
+
+    /**
+     * A task running either the scatter or the step phase for a range of task indices, splitting the range until
+     * it covers a single index.
+     */
+    @SuppressWarnings("serial")
+    private class RangeTask extends RecursiveAction {
+
+        /**
+         * The first task index (inclusive).
+         */
+        private final int from;
+
+        /**
+         * The last task index (exclusive).
+         */
+        private final int to;
+
+        /**
+         * true for the scatter phase, false for the step phase.
+         */
+        private final boolean scatter;
+
+        /**
+         * Constructor.
+         * @param from the first task index (inclusive).
+         * @param to the last task index (exclusive).
+         * @param scatter true for the scatter phase, false for the step phase.
+         */
+        RangeTask(int from, int to, boolean scatter) {
+            this.from = from;
+            this.to = to;
+            this.scatter = scatter;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                if (scatter) {
+                    scatter(from);
+                } else {
+                    step(from);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new RangeTask(from, mid, scatter), new RangeTask(mid, to, scatter));
+        }
+    }
+}
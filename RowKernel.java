@@ -0,0 +1,17 @@
+/**
+ * Computes the next generation of the rows of a {@link TileLife} tile.
+ *
+ * The arrays passed in hold {@link TileLife#TILE_SIZE} + 2 rows (the tile's rows, extended by the adjacent row of the
+ * tile above and below), {@code out} receives the {@link TileLife#TILE_SIZE} rows of the next generation.
+ */
+public interface RowKernel {
+
+    /**
+     * Computes the next generation rows.
+     * @param west the west neighbours of each row, including the rows above and below the tile.
+     * @param center the rows, including the rows above and below the tile.
+     * @param east the east neighbours of each row, including the rows above and below the tile.
+     * @param out the next generation rows.
+     */
+    void step(long[] west, long[] center, long[] east, long[] out);
+}
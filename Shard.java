@@ -0,0 +1,407 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A worker process of {@link ShardedLife}, owning the live cells of a vertical stripe of the plane (the columns
+ * lo .. hi-1, all rows).
+ *
+ * The worker connects to the coordinator, then to the workers owning the stripes to its left and right. Every
+ * generation it sends its outermost columns to these neighbours and receives theirs (the halo): the cells of the
+ * columns lo-1 and hi are all it needs to know about the rest of the plane to compute the next generation of its own
+ * columns. The halos are sent by a separate thread while the worker reads the halos of its neighbours, so large halos
+ * cannot deadlock two workers both writing to each other. Commands of the coordinator are executed one by one, see
+ * {@link ShardedLife}.
+ */
+public class Shard {
+
+    /**
+     * The coordinator's commands, each followed by its arguments.
+     */
+    static final int ASSIGN = 1, STEP = 2, HISTOGRAM = 3, REBOUND = 4, ADD = 5, COLLECT = 6, QUIT = 7;
+
+    /**
+     * The first column of the stripe.
+     */
+    private long lo;
+
+    /**
+     * The column after the stripe.
+     */
+    private long hi;
+
+    /**
+     * The live cells of the stripe in the current generation.
+     */
+    private CellTable genCurrent = new CellTable(1024);
+
+    /**
+     * Table used for building the next generation.
+     */
+    private CellTable genNext = new CellTable(1024);
+
+    /**
+     * The number of live neighbours per cell.
+     */
+    private final CellTable neighbourCounts = new CellTable(4096);
+
+    /**
+     * The cells of column lo to send to the left neighbour, resp. received from it (column lo-1).
+     */
+    private final LongList leftOut = new LongList(256), leftIn = new LongList(256);
+
+    /**
+     * The cells of column hi-1 to send to the right neighbour, resp. received from it (column hi).
+     */
+    private final LongList rightOut = new LongList(256), rightIn = new LongList(256);
+
+    /**
+     * The halo stream from the left neighbour, null for the leftmost stripe.
+     */
+    private final DataInputStream fromLeft;
+
+    /**
+     * The halo stream to the left neighbour, null for the leftmost stripe.
+     */
+    private final DataOutputStream toLeft;
+
+    /**
+     * The halo stream from the right neighbour, null for the rightmost stripe.
+     */
+    private final DataInputStream fromRight;
+
+    /**
+     * The halo stream to the right neighbour, null for the rightmost stripe.
+     */
+    private final DataOutputStream toRight;
+
+    /**
+     * Sends the halos while the worker receives those of its neighbours.
+     */
+    private final ExecutorService sender = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "halo sender");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Constructor.
+     * @param left the connection to the left neighbour, null if none.
+     * @param right the connection to the right neighbour, null if none.
+     * @throws IOException if the streams cannot be opened.
+     */
+    private Shard(Socket left, Socket right) throws IOException {
+        fromLeft = left != null ? input(left) : null;
+        toLeft = left != null ? output(left) : null;
+        fromRight = right != null ? input(right) : null;
+        toRight = right != null ? output(right) : null;
+    }
+
+    /**
+     * Opens the buffered input stream of a connection.
+     * @param socket the connection.
+     * @return the stream.
+     * @throws IOException if the stream cannot be opened.
+     */
+    static DataInputStream input(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        return new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+    }
+
+    /**
+     * Opens the buffered output stream of a connection.
+     * @param socket the connection.
+     * @return the stream.
+     * @throws IOException if the stream cannot be opened.
+     */
+    static DataOutputStream output(Socket socket) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+    }
+
+    /**
+     * Writes a list of cells: their number, then the packed keys.
+     * @param out the stream.
+     * @param cells the cells.
+     * @param count the number of cells.
+     * @throws IOException if writing fails.
+     */
+    static void writeCells(DataOutputStream out, long[] cells, int count) throws IOException {
+        out.writeInt(count);
+        for (int i = 0; i < count; ++i) {
+            out.writeLong(cells[i]);
+        }
+    }
+
+    /**
+     * Reads a list of cells written by {@link #writeCells(DataOutputStream, long[], int)}.
+     * @param in the stream.
+     * @param cells receives the cells.
+     * @throws IOException if reading fails.
+     */
+    static void readCells(DataInputStream in, LongList cells) throws IOException {
+        for (int count = in.readInt(); count > 0; --count) {
+            cells.add(in.readLong());
+        }
+    }
+
+    /**
+     * Writes the cells of a table, see {@link #writeCells(DataOutputStream, long[], int)}.
+     * @param out the stream.
+     * @param gen the table.
+     * @throws IOException if writing fails.
+     */
+    private static void writeTable(DataOutputStream out, CellTable gen) throws IOException {
+        out.writeInt(gen.size());
+        for (int slot = 0; slot < gen.capacity(); ++slot) {
+            long key = gen.keyAt(slot);
+            if (key != CellTable.EMPTY) {
+                out.writeLong(key);
+            }
+        }
+    }
+
+    /**
+     * Advances the stripe by one generation, exchanging the halos with the neighbours.
+     * @throws IOException if the exchange fails.
+     */
+    private void oneGeneration() throws IOException {
+        leftOut.clear();
+        rightOut.clear();
+        for (int slot = 0; slot < genCurrent.capacity(); ++slot) {
+            long key = genCurrent.keyAt(slot);
+            if (key == CellTable.EMPTY) {
+                continue;
+            }
+            long x = CellTable.x(key);
+            if (x == lo) {
+                leftOut.add(key);
+            }
+            if (x == hi - 1) {
+                rightOut.add(key);
+            }
+            countNeighbours(key);
+        }
+
+        Future<?> sent = sender.submit(() -> {
+            try {
+                if (toLeft != null) {
+                    writeCells(toLeft, leftOut.elements(), leftOut.size());
+                    toLeft.flush();
+                }
+                if (toRight != null) {
+                    writeCells(toRight, rightOut.elements(), rightOut.size());
+                    toRight.flush();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        leftIn.clear();
+        rightIn.clear();
+        if (fromLeft != null) {
+            readCells(fromLeft, leftIn);
+        }
+        if (fromRight != null) {
+            readCells(fromRight, rightIn);
+        }
+        for (int i = 0; i < leftIn.size(); ++i) {
+            countNeighbours(leftIn.get(i));
+        }
+        for (int i = 0; i < rightIn.size(); ++i) {
+            countNeighbours(rightIn.get(i));
+        }
+
+        // the counts cover the columns lo-2 .. hi+1, but only those of the stripe are computed correctly
+        for (int slot = 0; slot < neighbourCounts.capacity(); ++slot) {
+            long key = neighbourCounts.keyAt(slot);
+            if (key == CellTable.EMPTY) {
+                continue;
+            }
+            long x = CellTable.x(key);
+            int n = neighbourCounts.valueAt(slot);
+            if (x >= lo && x < hi && (n == 3 || (n == 2 && genCurrent.contains(key)))) {
+                genNext.add(key);
+            }
+        }
+        neighbourCounts.clear();
+
+        CellTable genTmp = genCurrent;
+        genCurrent = genNext;
+        genNext = genTmp;
+        genNext.clear();
+
+        try {
+            sent.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while sending the halo", e);
+        } catch (ExecutionException e) {
+            throw new IOException("sending the halo failed", e.getCause());
+        }
+    }
+
+    /**
+     * Increments the neighbour counts of the 8 neighbours of a live cell.
+     * @param key the cell.
+     */
+    private void countNeighbours(long key) {
+        long x = CellTable.x(key);
+        long y = CellTable.y(key);
+        neighbourCounts.increment(CellTable.key(x-1, y-1));
+        neighbourCounts.increment(CellTable.key(x-1, y+0));
+        neighbourCounts.increment(CellTable.key(x-1, y+1));
+        neighbourCounts.increment(CellTable.key(x+0, y-1));
+        neighbourCounts.increment(CellTable.key(x+0, y+1));
+        neighbourCounts.increment(CellTable.key(x+1, y-1));
+        neighbourCounts.increment(CellTable.key(x+1, y+0));
+        neighbourCounts.increment(CellTable.key(x+1, y+1));
+    }
+
+    /**
+     * Writes the number of live cells per column of the stripe, ordered by column: the number of columns, then a
+     * (column, count) pair for every column with live cells.
+     * @param out the stream.
+     * @throws IOException if writing fails.
+     */
+    private void writeHistogram(DataOutputStream out) throws IOException {
+        CellTable columns = new CellTable(256);
+        for (int slot = 0; slot < genCurrent.capacity(); ++slot) {
+            long key = genCurrent.keyAt(slot);
+            if (key != CellTable.EMPTY) {
+                columns.increment(CellTable.key(CellTable.x(key), 0));
+            }
+        }
+        long[] xs = new long[columns.size()];
+        int count = 0;
+        for (int slot = 0; slot < columns.capacity(); ++slot) {
+            if (columns.keyAt(slot) != CellTable.EMPTY) {
+                xs[count++] = CellTable.x(columns.keyAt(slot));
+            }
+        }
+        Arrays.sort(xs);
+        out.writeInt(count);
+        for (long x : xs) {
+            out.writeLong(x);
+            out.writeInt(columns.get(CellTable.key(x, 0)));
+        }
+    }
+
+    /**
+     * Moves the stripe to new columns, removing the cells outside.
+     * @param newLo the new first column.
+     * @param newHi the new column after the stripe.
+     * @param removed receives the removed cells.
+     */
+    private void rebound(long newLo, long newHi, LongList removed) {
+        lo = newLo;
+        hi = newHi;
+        for (int slot = 0; slot < genCurrent.capacity(); ++slot) {
+            long key = genCurrent.keyAt(slot);
+            if (key != CellTable.EMPTY && (CellTable.x(key) < lo || CellTable.x(key) >= hi)) {
+                removed.add(key);
+            }
+        }
+        for (int i = 0; i < removed.size(); ++i) {
+            genCurrent.remove(removed.get(i));
+        }
+    }
+
+    /**
+     * Executes the commands of the coordinator until told to quit.
+     * @param in the stream from the coordinator.
+     * @param out the stream to the coordinator.
+     * @throws IOException if communicating fails.
+     */
+    private void serve(DataInputStream in, DataOutputStream out) throws IOException {
+        LongList cells = new LongList(1024);
+        while (true) {
+            int command = in.readInt();
+            cells.clear();
+            switch (command) {
+                case ASSIGN:
+                    lo = in.readLong();
+                    hi = in.readLong();
+                    genCurrent.clear();
+                    readCells(in, cells);
+                    genCurrent.addAll(cells.elements(), cells.size());
+                    break;
+                case STEP:
+                    for (long generations = in.readLong(); generations > 0; --generations) {
+                        oneGeneration();
+                    }
+                    out.writeInt(genCurrent.size());
+                    break;
+                case HISTOGRAM:
+                    writeHistogram(out);
+                    break;
+                case REBOUND:
+                    long newLo = in.readLong();
+                    rebound(newLo, in.readLong(), cells);
+                    writeCells(out, cells.elements(), cells.size());
+                    break;
+                case ADD:
+                    readCells(in, cells);
+                    genCurrent.addAll(cells.elements(), cells.size());
+                    break;
+                case COLLECT:
+                    writeTable(out, genCurrent);
+                    break;
+                case QUIT:
+                    return;
+                default:
+                    throw new IOException("unknown command " + command);
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * main(): connects to the coordinator, reports the port of its halo server, receives the port of its right
+     * neighbour's halo server and connects to it, accepts the connection of its left neighbour, then serves the
+     * coordinator.
+     * @param args the coordinator's port, the index of the stripe and the number of stripes.
+     * @throws IOException if communicating fails.
+     */
+    public static void main(String[] args) throws IOException {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        int index = Integer.parseInt(args[1]);
+        int stripes = Integer.parseInt(args[2]);
+        try (Socket coordinator = new Socket(loopback, Integer.parseInt(args[0]));
+             ServerSocket haloServer = new ServerSocket(0, 1, loopback)) {
+            DataInputStream in = input(coordinator);
+            DataOutputStream out = output(coordinator);
+            out.writeInt(index);
+            out.writeInt(haloServer.getLocalPort());
+            out.flush();
+            int rightPort = in.readInt();
+
+            Socket right = index < stripes - 1 ? new Socket(loopback, rightPort) : null;
+            Socket left = index > 0 ? haloServer.accept() : null;
+            try {
+                Shard shard = new Shard(left, right);
+                out.writeInt(index);
+                out.flush();
+                shard.serve(in, out);
+                shard.sender.shutdown();
+            } finally {
+                if (left != null) {
+                    left.close();
+                }
+                if (right != null) {
+                    right.close();
+                }
+            }
+        }
+    }
+}
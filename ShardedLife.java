@@ -0,0 +1,422 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Game-of-life implementation distributing the plane over several worker processes ({@link Shard}s), for patterns
+ * outgrowing the memory or cores of a single JVM.
+ *
+ * The plane is split into vertical stripes of columns, one per worker; neighbouring workers exchange the outermost
+ * columns of their stripes every generation over local sockets. The coordinator (this class) reads the initial
+ * generation, cuts the stripes so each holds about the same number of cells, and advances the workers by
+ * {@link #REBALANCE_INTERVAL} generations at a time. When the populations of the stripes drift apart by more than
+ * {@link #MAX_IMBALANCE}, the stripes are cut anew from the column histograms of the workers, and only the cells
+ * changing their stripe are moved (through the coordinator). Finally the cells are collected and written like
+ * {@link Life} does, so the output matches a single process run exactly.
+ *
+ * Protocol: the coordinator listens on a loopback port passed to the workers it starts. Each worker connects,
+ * reports its index and the port of its own halo server, receives the port of its right neighbour and connects to
+ * it, then confirms. Afterwards the coordinator sends commands ({@link Shard#ASSIGN} etc.), to which the workers
+ * reply as documented there.
+ */
+public class ShardedLife {
+
+    /**
+     * The default number of generations between two population checks.
+     */
+    private static final int REBALANCE_INTERVAL = 64;
+
+    /**
+     * The max. ratio of the largest stripe population to the mean tolerated.
+     */
+    private static final double MAX_IMBALANCE = 1.25;
+
+    /**
+     * The min. total population worth rebalancing.
+     */
+    private static final int MIN_REBALANCE_POPULATION = 1024;
+
+    /**
+     * The max. time in milliseconds to wait for a worker to connect.
+     */
+    private static final int CONNECT_TIMEOUT = 60_000;
+
+    /**
+     * The worker processes.
+     */
+    private final List<Process> processes = new ArrayList<>();
+
+    /**
+     * The streams from the workers, by stripe.
+     */
+    private final DataInputStream[] in;
+
+    /**
+     * The streams to the workers, by stripe.
+     */
+    private final DataOutputStream[] out;
+
+    /**
+     * The connections to the workers, by stripe.
+     */
+    private final Socket[] sockets;
+
+    /**
+     * The stripe boundaries: stripe i owns the columns bounds[i] .. bounds[i+1]-1.
+     */
+    private final long[] bounds;
+
+    /**
+     * The population of each stripe after the last step.
+     */
+    private final int[] populations;
+
+    /**
+     * The number of times the stripes were cut anew.
+     */
+    private int rebalances;
+
+    /**
+     * Constructor, starts the workers with the same JVM options as this one and connects them.
+     * @param workers the number of workers.
+     * @throws IOException if a worker cannot be started or connected.
+     */
+    public ShardedLife(int workers) throws IOException {
+        in = new DataInputStream[workers];
+        out = new DataOutputStream[workers];
+        sockets = new Socket[workers];
+        bounds = new long[workers + 1];
+        populations = new int[workers];
+
+        try (ServerSocket server = new ServerSocket(0, workers, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(CONNECT_TIMEOUT);
+            for (int i = 0; i < workers; ++i) {
+                List<String> command = new ArrayList<>();
+                command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+                command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+                command.add("-cp");
+                command.add(System.getProperty("java.class.path"));
+                command.add(Shard.class.getName());
+                command.addAll(List.of(Integer.toString(server.getLocalPort()), Integer.toString(i),
+                        Integer.toString(workers)));
+                processes.add(new ProcessBuilder(command).redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                        .redirectError(ProcessBuilder.Redirect.INHERIT).start());
+            }
+
+            int[] haloPorts = new int[workers];
+            for (int i = 0; i < workers; ++i) {
+                Socket socket = server.accept();
+                DataInputStream input = Shard.input(socket);
+                int index = input.readInt();
+                sockets[index] = socket;
+                in[index] = input;
+                out[index] = Shard.output(socket);
+                haloPorts[index] = in[index].readInt();
+            }
+            for (int i = 0; i < workers; ++i) {
+                out[i].writeInt(i < workers - 1 ? haloPorts[i + 1] : 0);
+                out[i].flush();
+            }
+            for (int i = 0; i < workers; ++i) {
+                if (in[i].readInt() != i) {
+                    throw new IOException("worker " + i + " failed to connect its neighbours");
+                }
+            }
+        }
+    }
+
+    /**
+     * Distributes the initial generation over the workers, cutting the stripes so each holds about the same number
+     * of cells.
+     * @param cells the cells, packed by {@link CellTable#key(long, long)}.
+     * @param count the number of cells.
+     * @throws IOException if communicating fails.
+     */
+    public void assign(long[] cells, int count) throws IOException {
+        long[] xs = new long[count];
+        for (int i = 0; i < count; ++i) {
+            xs[i] = CellTable.x(cells[i]);
+        }
+        Arrays.sort(xs);
+        long[] columns = new long[count];
+        int[] counts = new int[count];
+        int n = 0;
+        for (int i = 0; i < count; ++i) {
+            if (n == 0 || columns[n - 1] != xs[i]) {
+                columns[n++] = xs[i];
+            }
+            ++counts[n - 1];
+        }
+        cut(columns, counts, n, count);
+
+        LongList[] stripes = new LongList[out.length];
+        for (int i = 0; i < stripes.length; ++i) {
+            stripes[i] = new LongList(count / stripes.length + 1);
+        }
+        for (int i = 0; i < count; ++i) {
+            stripes[stripe(CellTable.x(cells[i]))].add(cells[i]);
+        }
+        for (int i = 0; i < out.length; ++i) {
+            out[i].writeInt(Shard.ASSIGN);
+            out[i].writeLong(bounds[i]);
+            out[i].writeLong(bounds[i + 1]);
+            Shard.writeCells(out[i], stripes[i].elements(), stripes[i].size());
+            out[i].flush();
+            populations[i] = stripes[i].size();
+        }
+    }
+
+    /**
+     * Sets the stripe boundaries so each stripe holds about the same number of cells; every stripe keeps at least
+     * one column.
+     * @param columns the columns with live cells, ascending.
+     * @param counts the number of live cells per column.
+     * @param n the number of columns.
+     * @param total the total number of live cells.
+     */
+    private void cut(long[] columns, int[] counts, int n, long total) {
+        int stripes = out.length;
+        bounds[0] = Long.MIN_VALUE;
+        bounds[stripes] = Long.MAX_VALUE;
+        long sum = 0;
+        int column = 0;
+        for (int i = 1; i < stripes; ++i) {
+            // the first column at which the cells left of it reach the share of the stripes left of the boundary
+            while (column < n && sum + counts[column] <= total * i / stripes) {
+                sum += counts[column++];
+            }
+            long boundary = column < n ? columns[column] : n > 0 ? columns[n - 1] + 1 : 0;
+            bounds[i] = i > 1 ? Math.max(boundary, bounds[i - 1] + 1) : boundary;
+        }
+    }
+
+    /**
+     * Returns the stripe owning a column.
+     * @param x the X coordinate of the column.
+     * @return the stripe index.
+     */
+    private int stripe(long x) {
+        int stripe = Arrays.binarySearch(bounds, 1, bounds.length - 1, x);
+        return stripe >= 0 ? stripe : -stripe - 2;
+    }
+
+    /**
+     * Advances all workers by a number of generations.
+     * @param generations the number of generations.
+     * @throws IOException if communicating fails.
+     */
+    private void step(long generations) throws IOException {
+        for (DataOutputStream o : out) {
+            o.writeInt(Shard.STEP);
+            o.writeLong(generations);
+            o.flush();
+        }
+        for (int i = 0; i < in.length; ++i) {
+            populations[i] = in[i].readInt();
+        }
+    }
+
+    /**
+     * Advances the generations, rebalancing the stripes every {@link #REBALANCE_INTERVAL} generations if necessary.
+     * @param generations the number of generations.
+     * @param interval the number of generations between two population checks.
+     * @throws IOException if communicating fails.
+     */
+    public void advance(long generations, int interval) throws IOException {
+        while (generations > 0) {
+            long steps = Math.min(generations, interval);
+            step(steps);
+            generations -= steps;
+            if (generations > 0 && imbalanced()) {
+                rebalance();
+            }
+        }
+    }
+
+    /**
+     * Checks if the populations of the stripes drifted apart.
+     * @return true if the largest stripe population exceeds the mean by more than {@link #MAX_IMBALANCE}.
+     */
+    private boolean imbalanced() {
+        long total = 0;
+        int max = 0;
+        for (int population : populations) {
+            total += population;
+            max = Math.max(max, population);
+        }
+        return total >= MIN_REBALANCE_POPULATION && max > MAX_IMBALANCE * total / populations.length;
+    }
+
+    /**
+     * Cuts the stripes anew from the column histograms of the workers, then moves the cells changing their stripe.
+     * @throws IOException if communicating fails.
+     */
+    private void rebalance() throws IOException {
+        for (DataOutputStream o : out) {
+            o.writeInt(Shard.HISTOGRAM);
+            o.flush();
+        }
+        // the stripes are ordered by column, so are the concatenated histograms
+        long[][] stripeColumns = new long[in.length][];
+        int[][] stripeCounts = new int[in.length][];
+        int n = 0;
+        long total = 0;
+        for (int i = 0; i < in.length; ++i) {
+            int size = in[i].readInt();
+            stripeColumns[i] = new long[size];
+            stripeCounts[i] = new int[size];
+            for (int c = 0; c < size; ++c) {
+                stripeColumns[i][c] = in[i].readLong();
+                stripeCounts[i][c] = in[i].readInt();
+                total += stripeCounts[i][c];
+            }
+            n += size;
+        }
+        long[] columns = new long[n];
+        int[] counts = new int[n];
+        n = 0;
+        for (int i = 0; i < in.length; ++i) {
+            System.arraycopy(stripeColumns[i], 0, columns, n, stripeColumns[i].length);
+            System.arraycopy(stripeCounts[i], 0, counts, n, stripeCounts[i].length);
+            n += stripeColumns[i].length;
+        }
+        cut(columns, counts, n, total);
+
+        LongList[] moved = new LongList[out.length];
+        for (int i = 0; i < out.length; ++i) {
+            moved[i] = new LongList(256);
+            out[i].writeInt(Shard.REBOUND);
+            out[i].writeLong(bounds[i]);
+            out[i].writeLong(bounds[i + 1]);
+            out[i].flush();
+        }
+        LongList removed = new LongList(256);
+        for (int i = 0; i < in.length; ++i) {
+            removed.clear();
+            Shard.readCells(in[i], removed);
+            for (int c = 0; c < removed.size(); ++c) {
+                moved[stripe(CellTable.x(removed.get(c)))].add(removed.get(c));
+            }
+        }
+        for (int i = 0; i < out.length; ++i) {
+            out[i].writeInt(Shard.ADD);
+            Shard.writeCells(out[i], moved[i].elements(), moved[i].size());
+            out[i].flush();
+        }
+        ++rebalances;
+    }
+
+    /**
+     * Collects the cells of all workers.
+     * @param cells receives the cells.
+     * @throws IOException if communicating fails.
+     */
+    public void collect(LongList cells) throws IOException {
+        for (DataOutputStream o : out) {
+            o.writeInt(Shard.COLLECT);
+            o.flush();
+        }
+        for (DataInputStream i : in) {
+            Shard.readCells(i, cells);
+        }
+    }
+
+    /**
+     * Stops the workers and waits for them to exit.
+     * @throws IOException if communicating fails or a worker fails.
+     * @throws InterruptedException if interrupted while waiting for a worker.
+     */
+    public void shutdown() throws IOException, InterruptedException {
+        for (DataOutputStream o : out) {
+            o.writeInt(Shard.QUIT);
+            o.flush();
+        }
+        for (int i = 0; i < processes.size(); ++i) {
+            if (processes.get(i).waitFor() != 0) {
+                throw new IOException("worker " + i + " failed with exit code " + processes.get(i).exitValue());
+            }
+            sockets[i].close();
+        }
+    }
+
+    /**
+     * Prints the usage message and exits.
+     */
+    private static void usage() {
+        System.err.format("Usage: java %s [-w #workers] [-b #generations between rebalancing] [-f startfile] #generations [<startfile] >endfile%nCoordinates must lie within [-2147483646, 2147483646]; a run stops with an error before a cell can leave [-2147483647, 2147483647].%n", ShardedLife.class.getName());
+        System.exit(1);
+    }
+
+    /**
+     * main().
+     * @param args cmd line arguments
+     * @throws Exception if a worker fails.
+     */
+    public static void main(String[] args) throws Exception {
+        int workers = 4;
+        int interval = REBALANCE_INTERVAL;
+        Path startFile = null;
+
+        // parse options.
+        int argIdx = 0;
+        while (argIdx < args.length - 1 && args[argIdx].startsWith("-")) {
+            String option = args[argIdx++];
+            String value = args[argIdx++];
+            switch (option) {
+                case "-w":
+                    workers = Integer.parseInt(value);
+                    break;
+                case "-b":
+                    interval = Integer.parseInt(value);
+                    break;
+                case "-f":
+                    startFile = Paths.get(value);
+                    break;
+                default:
+                    usage();
+            }
+        }
+
+        // arguments checking.
+        if (argIdx != args.length - 1 || workers < 1 || interval < 1) {
+            usage();
+        }
+
+        // parse nr of generations.
+        long generations = Long.parseLong(args[argIdx]);
+
+        // read in initial generation.
+        LongList cells = new LongList(1 << 16);
+        if (startFile != null) {
+            MappedCellLoader.load(startFile, Runtime.getRuntime().availableProcessors(), cells::addAll);
+        } else {
+            new CellReader(Channels.newChannel(System.in)).readCells(cells::addAll);
+        }
+
+        ShardedLife life = new ShardedLife(workers);
+        long start = System.nanoTime();
+        life.assign(cells.elements(), cells.size());
+        life.advance(generations, interval);
+        cells.clear();
+        life.collect(cells);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        life.shutdown();
+
+        SortedCellWriter.write(cells.elements(), cells.size(), new FileOutputStream(FileDescriptor.out).getChannel());
+        System.err.format("%d cells alive%n", cells.size());
+        System.err.format("%d workers, %.2fs, stripes cut %d times, final populations %s%n", workers, seconds,
+                life.rebalances, Arrays.toString(life.populations));
+    }
+}
@@ -0,0 +1,210 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes cells ("x y" per line) in the order of {@code LC_ALL=C sort}, so the output can be compared with reference
+ * files directly instead of being piped through sort.
+ *
+ * sort compares lines byte by byte, i.e. lexicographically by the decimal text of X, then of Y: negative numbers
+ * come first ('-' &lt; '0'), and a number precedes the numbers it is a prefix of (' ' and '\n' &lt; '0'), e.g.
+ * "-1 0" &lt; "-10 0" &lt; "1 0" &lt; "10 0" &lt; "2 0". The cells are sorted as primitive longs by a stable LSD radix sort
+ * over order preserving codes of this text (see {@link #code(long)}), first by Y, then by X. The text is encoded by
+ * hand into a direct buffer written to a channel.
+ */
+public class SortedCellWriter {
+
+    /**
+     * The max. number of digits of a coordinate.
+     */
+    private static final int MAX_DIGITS = 10;
+
+    /**
+     * Powers of 11, the radix of the digit codes.
+     */
+    private static final long[] POW11 = new long[MAX_DIGITS + 1];
+
+    static {
+        POW11[0] = 1;
+        for (int i = 1; i <= MAX_DIGITS; ++i) {
+            POW11[i] = POW11[i - 1] * 11;
+        }
+    }
+
+    /**
+     * The number of bits of a code: 1 sign bit + 10 base 11 digits (11^10 &lt; 2^35).
+     */
+    private static final int CODE_BITS = 36;
+
+    /**
+     * The number of bits sorted per radix pass.
+     */
+    private static final int RADIX_BITS = 12;
+
+    /**
+     * The size of the output buffer in bytes.
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * The max. length of a line in bytes: 2 * "-2147483648" + ' ' + '\n'.
+     */
+    private static final int MAX_LINE = 2 * (MAX_DIGITS + 1) + 2;
+
+    /**
+     * Static methods only.
+     */
+    private SortedCellWriter() {
+    }
+
+    /**
+     * Calculates a code of a coordinate preserving the byte order of its decimal text.
+     *
+     * The code is the sign bit (set for non-negative numbers, which sort after '-'), followed by the digits as a
+     * base 11 number of 10 places, most significant digit first: digit d is encoded as d + 1, the places after the
+     * last digit as 0, so a number sorts before the numbers it is a prefix of.
+     * @param v the coordinate.
+     * @return the code (CODE_BITS bits).
+     */
+    static long code(long v) {
+        long abs = Math.abs(v);
+        int digits = 1;
+        for (long p = 10; p <= abs; p *= 10) {
+            ++digits;
+        }
+        long code = 0;
+        for (int place = MAX_DIGITS - digits; place < MAX_DIGITS; ++place, abs /= 10) {
+            code += (abs % 10 + 1) * POW11[place];
+        }
+        return v < 0 ? code : code | (1L << (CODE_BITS - 1));
+    }
+
+    /**
+     * Sorts cells in the order of their text lines.
+     * @param cells the packed cell keys (see {@link CellTable#key(long, long)}).
+     * @param count the number of cells to sort, starting at index 0.
+     */
+    static void sort(long[] cells, int count) {
+        long[] keys = new long[count];
+        long[] cellsTmp = new long[count];
+        long[] keysTmp = new long[count];
+        long[] src = cells, dst = cellsTmp;
+
+        // LSD radix sort is stable: sorting by Y, then by X yields the order by X, then Y
+        for (int stage = 0; stage < 2; ++stage) {
+            for (int i = 0; i < count; ++i) {
+                keys[i] = code(stage == 0 ? CellTable.y(src[i]) : CellTable.x(src[i]));
+            }
+            for (int shift = 0; shift < CODE_BITS; shift += RADIX_BITS) {
+                if (radixPass(keys, src, keysTmp, dst, count, shift)) {
+                    long[] tmp = keys;
+                    keys = keysTmp;
+                    keysTmp = tmp;
+                    tmp = src;
+                    src = dst;
+                    dst = tmp;
+                }
+            }
+        }
+
+        if (src != cells) {
+            System.arraycopy(src, 0, cells, 0, count);
+        }
+    }
+
+    /**
+     * Distributes cells by one radix digit of their keys.
+     * @param keys the sort keys.
+     * @param cells the cells.
+     * @param keysOut receives the sort keys, ordered by the digit.
+     * @param cellsOut receives the cells, ordered by the digit.
+     * @param count the number of cells.
+     * @param shift the position of the digit.
+     * @return true if the cells were distributed, false if all have the same digit (the output is unchanged).
+     */
+    private static boolean radixPass(long[] keys, long[] cells, long[] keysOut, long[] cellsOut, int count, int shift) {
+        int mask = (1 << RADIX_BITS) - 1;
+        int[] offsets = new int[1 << RADIX_BITS];
+        for (int i = 0; i < count; ++i) {
+            offsets[(int) (keys[i] >>> shift) & mask]++;
+        }
+        int sum = 0;
+        for (int d = 0; d < offsets.length; ++d) {
+            int n = offsets[d];
+            if (n == count) {
+                return false;
+            }
+            offsets[d] = sum;
+            sum += n;
+        }
+        for (int i = 0; i < count; ++i) {
+            int pos = offsets[(int) (keys[i] >>> shift) & mask]++;
+            keysOut[pos] = keys[i];
+            cellsOut[pos] = cells[i];
+        }
+        return true;
+    }
+
+    /**
+     * Sorts and writes cells.
+     * @param cells the packed cell keys, sorted in place.
+     * @param count the number of cells, starting at index 0.
+     * @param channel the channel to write to.
+     * @throws IOException if writing fails.
+     */
+    public static void write(long[] cells, int count, WritableByteChannel channel) throws IOException {
+        sort(cells, count);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        byte[] line = new byte[MAX_LINE];
+        for (int i = 0; i < count; ++i) {
+            int len = encode(CellTable.x(cells[i]), line, 0);
+            line[len++] = ' ';
+            len = encode(CellTable.y(cells[i]), line, len);
+            line[len++] = '\n';
+            if (buffer.remaining() < len) {
+                flush(buffer, channel);
+            }
+            buffer.put(line, 0, len);
+        }
+        flush(buffer, channel);
+    }
+
+    /**
+     * Encodes a number as decimal text.
+     * @param v the number.
+     * @param dst the destination array.
+     * @param pos the position of the first character in the destination array.
+     * @return the position after the last character.
+     */
+    private static int encode(long v, byte[] dst, int pos) {
+        if (v < 0) {
+            dst[pos++] = '-';
+            v = -v;
+        }
+        int end = pos;
+        long p = v;
+        do {
+            ++end;
+            p /= 10;
+        } while (p != 0);
+        for (int i = end - 1; i >= pos; --i, v /= 10) {
+            dst[i] = (byte) ('0' + v % 10);
+        }
+        return end;
+    }
+
+    /**
+     * Writes the contents of the buffer to the channel and clears the buffer.
+     * @param buffer the buffer.
+     * @param channel the channel.
+     * @throws IOException if writing fails.
+     */
+    private static void flush(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,662 @@
+import java.util.Arrays;
+
+/**
+ * Simulates 64 independent universes ("lanes", e.g. random soups) at once: every cell of a bounded grid is a long
+ * whose bit i tells whether the cell is alive in lane i, so one pass of bitwise logic over the grid steps all lanes.
+ *
+ * A generation is computed by bit-sliced adders: first the horizontal sums of 3 adjacent cells (2 bits each) for
+ * every row, then the vertical sum of 3 such sums, giving the number of live cells in the 3x3 block around each cell
+ * (4 bits). A cell lives in the next generation if the block holds 3 live cells, or 4 and the cell itself is alive.
+ * Only the rows and columns next to live cells (of any lane) are computed.
+ *
+ * Every lane is tracked until it settles:
+ * 1. stable: every {@link #CHECK_INTERVAL} generations a snapshot of the grid is taken; a lane identical to the last
+ *    snapshot is periodic from then on, with a period dividing the interval. Its exact period is found by comparing
+ *    the generations at the divisors of the interval after the next snapshot with it.
+ * 2. escaped: the grid is surrounded by dead cells, so a lane is only simulated exactly as long as it has no live
+ *    cells in the outermost ring of the grid. Once a lane leaves the central quarter of the grid, the spaceships flying
+ *    away from it (e.g. the gliders most soups emit) are taken out of the grid by a {@link SpaceshipTracker} and
+ *    advanced analytically, checked every {@link SpaceshipTracker#INTERVAL} generations. If a lane still reaches the
+ *    ring, it is reported (with its spaceships) to the {@link LaneListener}, e.g. to continue it by {@link Life}.
+ * Each lane runs the given number of generations from when it was filled. A lane is retired as soon as its final
+ * population is known: when it reached that generation, when it is periodic (with no spaceship ever coming back) and
+ * in the phase of that generation, or when it escaped. A retired lane is cleared and refilled by the listener, so
+ * a batch never waits for its slowest lane while there are universes left to run.
+ */
+public class SoupBatch {
+
+    /**
+     * The number of lanes.
+     */
+    public static final int LANES = 64;
+
+    /**
+     * The interval between stability checks in generations, the least common multiple of the most common periods
+     * (1, 2, 3, 4, 5, 6, 10, 12, 15, 20, 30).
+     */
+    static final int CHECK_INTERVAL = 60;
+
+    /**
+     * The max. number of generations between two attempts to release spaceships from a lane, see
+     * {@link #track(int, LaneListener)}.
+     */
+    private static final int MAX_TRACK_INTERVAL = 8 * SpaceshipTracker.INTERVAL;
+
+    /**
+     * Fills the lanes and receives their results.
+     */
+    interface LaneListener {
+
+        /**
+         * Called for a free lane: starts a new universe in it by {@link #set(int, int, int)}.
+         * @param lane the lane.
+         * @return true if the lane was filled, false to leave it free as there are no universes left.
+         */
+        boolean refill(int lane);
+
+        /**
+         * Called when the final population of a lane is known; the lane is refilled afterwards.
+         * @param lane the lane.
+         * @param population the population at the last generation, including the spaceships.
+         * @param stable true if the lane was found to be periodic.
+         */
+        void finished(int lane, int population, boolean stable);
+
+        /**
+         * Called when a lane leaves the grid; the lane is refilled afterwards.
+         * @param lane the lane.
+         * @param generation the generation of the lane (counted from when it was filled).
+         * @param cells the cells of the lane at this generation, including its spaceships, packed by
+         *              {@link CellTable#key(long, long)} in grid coordinates.
+         */
+        void escaped(int lane, long generation, LongList cells);
+    }
+
+    /**
+     * The width of the grid.
+     */
+    private final int width;
+
+    /**
+     * The height of the grid.
+     */
+    private final int height;
+
+    /**
+     * The distance between vertically adjacent cells in the arrays (width + 2 for the dead border columns).
+     */
+    private final int stride;
+
+    /**
+     * The cells of the current generation, including a border of dead cells.
+     */
+    private long[] cells;
+
+    /**
+     * The cells of the next generation.
+     */
+    private long[] next;
+
+    /**
+     * The low bits of the horizontal sums of 3 adjacent cells.
+     */
+    private final long[] sum0;
+
+    /**
+     * The high bits of the horizontal sums of 3 adjacent cells.
+     */
+    private final long[] sum1;
+
+    /**
+     * The lanes alive in each row of {@link #cells} (index = row + 1).
+     */
+    private long[] rowLanes;
+
+    /**
+     * The lanes alive in each row of {@link #next}.
+     */
+    private long[] nextRowLanes;
+
+    /**
+     * The min. and max. column (1 to width) holding live cells of any lane, empty if min. > max.; may be wider than
+     * necessary after cells were removed.
+     */
+    private int minColumn, maxColumn;
+
+    /**
+     * The column range of the live cells of the previous generation, still in {@link #next}.
+     */
+    private int nextMinColumn, nextMaxColumn;
+
+    /**
+     * The snapshot taken at the last stability check.
+     */
+    private final long[] snapshot;
+
+    /**
+     * The lanes alive in each row of {@link #snapshot}.
+     */
+    private final long[] snapshotRowLanes;
+
+    /**
+     * The generation of the current generation.
+     */
+    private long generation;
+
+    /**
+     * The lanes holding a universe.
+     */
+    private long active;
+
+    /**
+     * The generation at which each lane was filled.
+     */
+    private final long[] start = new long[LANES];
+
+    /**
+     * The lanes found to be periodic.
+     */
+    private long stable;
+
+    /**
+     * The stable lanes whose exact period is still to be determined.
+     */
+    private long pending;
+
+    /**
+     * The period of each stable lane (0 if not determined yet).
+     */
+    private final int[] periods = new int[LANES];
+
+    /**
+     * The spaceship tracker of each lane, null until the lane first reaches the border.
+     */
+    private final SpaceshipTracker[] trackers = new SpaceshipTracker[LANES];
+
+    /**
+     * The lanes with spaceships taken out of the grid.
+     */
+    private long shipLanes;
+
+    /**
+     * The stable lanes whose spaceships were found to never come back.
+     */
+    private long safe;
+
+    /**
+     * The number of generations between two attempts to release spaceships from each lane.
+     */
+    private final int[] trackIntervals = new int[LANES];
+
+    /**
+     * The generation of the next attempt to release spaceships from each lane.
+     */
+    private final long[] nextTrack = new long[LANES];
+
+    /**
+     * Constructor.
+     * @param width the width of the grid.
+     * @param height the height of the grid.
+     */
+    public SoupBatch(int width, int height) {
+        if (width < 3 || height < 3) {
+            throw new IllegalArgumentException("grid must be at least 3x3: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.stride = width + 2;
+        int size = stride * (height + 2);
+        this.cells = new long[size];
+        this.next = new long[size];
+        this.sum0 = new long[size];
+        this.sum1 = new long[size];
+        this.snapshot = new long[size];
+        this.snapshotRowLanes = new long[height + 2];
+        this.rowLanes = new long[height + 2];
+        this.nextRowLanes = new long[height + 2];
+        this.minColumn = this.nextMinColumn = width + 1;
+        Arrays.fill(trackIntervals, SpaceshipTracker.INTERVAL);
+    }
+
+    /**
+     * Sets a cell alive in a lane.
+     * @param lane the lane.
+     * @param x the X coordinate in [0, width).
+     * @param y the Y coordinate in [0, height).
+     */
+    public void set(int lane, int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            throw new IndexOutOfBoundsException("cell outside the grid: " + x + "," + y);
+        }
+        cells[(y + 1) * stride + x + 1] |= 1L << lane;
+        rowLanes[y + 1] |= 1L << lane;
+        minColumn = Math.min(minColumn, x + 1);
+        maxColumn = Math.max(maxColumn, x + 1);
+    }
+
+    /**
+     * Collects the live cells of a lane in the grid.
+     * @param lane the lane.
+     * @return the cells, packed by {@link CellTable#key(long, long)} in grid coordinates.
+     */
+    private CellTable laneCells(int lane) {
+        CellTable gen = new CellTable(256);
+        for (int y = 1; y <= height; ++y) {
+            if ((rowLanes[y] >>> lane & 1) == 0) {
+                continue;
+            }
+            for (int i = y * stride + minColumn; i <= y * stride + maxColumn; ++i) {
+                if ((cells[i] >>> lane & 1) != 0) {
+                    gen.add(CellTable.key(i - y * stride - 1, y - 1));
+                }
+            }
+        }
+        return gen;
+    }
+
+    /**
+     * Counts the live cells of a lane (including its spaceships).
+     * @param lane the lane.
+     * @return the population.
+     */
+    private int population(int lane) {
+        int population = 0;
+        for (int y = 1; y <= height; ++y) {
+            if ((rowLanes[y] >>> lane & 1) == 0) {
+                continue;
+            }
+            for (int i = y * stride + minColumn; i <= y * stride + maxColumn; ++i) {
+                population += (int) (cells[i] >>> lane & 1);
+            }
+        }
+        if ((shipLanes >>> lane & 1) != 0) {
+            population += trackers[lane].cells(generation);
+        }
+        return population;
+    }
+
+    /**
+     * Returns the current generation.
+     * @return the number of generations advanced.
+     */
+    public long generation() {
+        return generation;
+    }
+
+    /**
+     * Returns the lanes found to be periodic.
+     * @return a bit mask of the lanes.
+     */
+    public long stableLanes() {
+        return stable;
+    }
+
+    /**
+     * Returns the period of a stable lane.
+     * @param lane the lane.
+     * @return the period, 0 if the lane is not stable or its period is not determined yet.
+     */
+    public int period(int lane) {
+        return periods[lane];
+    }
+
+    /**
+     * Runs universes in all lanes until the listener has no more: fills the free lanes, advances each lane by a
+     * number of generations, retiring and refilling lanes as soon as their final population is known.
+     * @param generations the number of generations to run each universe.
+     * @param listener fills the lanes and receives their results.
+     */
+    public void run(long generations, LaneListener listener) {
+        for (int lane = 0; lane < LANES; ++lane) {
+            if ((active >>> lane & 1) == 0) {
+                fill(lane, listener);
+            }
+        }
+        while (true) {
+            for (long lanes = active; lanes != 0; lanes &= lanes - 1) {
+                int lane = Long.numberOfTrailingZeros(lanes);
+                while ((active >>> lane & 1) != 0 && finished(lane, generations)) {
+                    listener.finished(lane, population(lane), (stable >>> lane & 1) != 0);
+                    free(lane);
+                    fill(lane, listener);
+                }
+            }
+            if (active == 0) {
+                return;
+            }
+            step();
+            long tracked = borderLanes();
+            if (generation % SpaceshipTracker.INTERVAL == 0) {
+                // releasing spaceships long before they reach the border keeps the columns computed by step() narrow
+                tracked |= shipLanes | (outerLanes() & ~stable);
+            }
+            for (long lanes = tracked & active; lanes != 0; lanes &= lanes - 1) {
+                track(Long.numberOfTrailingZeros(lanes), listener);
+            }
+            if (generation % SpaceshipTracker.INTERVAL == 0) {
+                safe |= shipsSafe();
+            }
+            check();
+        }
+    }
+
+    /**
+     * Checks if the final population of a lane is known: it ran all generations, or it is periodic, no spaceship
+     * will come back and its phase is that of the last generation.
+     * @param lane the lane.
+     * @param generations the number of generations to run.
+     * @return true if the current population of the lane is its final one.
+     */
+    private boolean finished(int lane, long generations) {
+        long left = generations - (generation - start[lane]);
+        if (left <= 0) {
+            return true;
+        }
+        long bit = 1L << lane;
+        return (stable & ~pending & bit) != 0 && ((shipLanes & ~safe & bit) == 0) && left % periods[lane] == 0;
+    }
+
+    /**
+     * Starts a new universe in a free lane, see {@link LaneListener#refill(int)}.
+     * @param lane the lane.
+     * @param listener the listener filling the lane.
+     */
+    private void fill(int lane, LaneListener listener) {
+        start[lane] = generation;
+        if (listener.refill(lane)) {
+            active |= 1L << lane;
+        }
+    }
+
+    /**
+     * Frees a lane: removes its cells and spaceships and everything known about it.
+     * @param lane the lane.
+     */
+    private void free(int lane) {
+        long bit = 1L << lane;
+        clear(bit);
+        for (int y = 1; y <= height; ++y) {
+            if ((snapshotRowLanes[y] & bit) == 0) {
+                continue;
+            }
+            for (int i = y * stride + 1; i <= y * stride + width; ++i) {
+                snapshot[i] &= ~bit;
+            }
+            snapshotRowLanes[y] &= ~bit;
+        }
+        active &= ~bit;
+        shipLanes &= ~bit;
+        trackers[lane] = null;
+        periods[lane] = 0;
+        trackIntervals[lane] = SpaceshipTracker.INTERVAL;
+        nextTrack[lane] = 0;
+    }
+
+    /**
+     * Updates the spaceship tracker of a lane, taking escaping spaceships out of the grid and putting back those which
+     * came too close, see {@link SpaceshipTracker#update(CellStore, long)}. A lane still reaching the border
+     * afterwards is passed to the listener and refilled. Looking for new spaceships in the debris of a lane is
+     * expensive, so the interval between two attempts doubles (up to {@link #MAX_TRACK_INTERVAL}) while nothing is
+     * released, unless the lane reached the border; in between, only the released spaceships are checked.
+     * @param lane the lane.
+     * @param listener receives the lanes leaving the grid.
+     */
+    private void track(int lane, LaneListener listener) {
+        if (trackers[lane] == null) {
+            trackers[lane] = new SpaceshipTracker();
+        }
+        SpaceshipTracker tracker = trackers[lane];
+        CellTable gen = laneCells(lane);
+        boolean changed;
+        if (nextTrack[lane] <= generation || !inside(gen)) {
+            changed = tracker.update(gen, generation);
+            trackIntervals[lane] = changed ? SpaceshipTracker.INTERVAL
+                    : Math.min(2 * trackIntervals[lane], MAX_TRACK_INTERVAL);
+            nextTrack[lane] = generation + trackIntervals[lane];
+        } else {
+            changed = tracker.recall(gen, generation);
+        }
+        if (inside(gen)) {
+            if (changed) {
+                clear(1L << lane);
+                for (int slot = 0; slot < gen.capacity(); ++slot) {
+                    long key = gen.keyAt(slot);
+                    if (key != CellTable.EMPTY) {
+                        set(lane, (int) CellTable.x(key), (int) CellTable.y(key));
+                    }
+                }
+            }
+            shipLanes = tracker.size() > 0 ? shipLanes | 1L << lane : shipLanes & ~(1L << lane);
+            return;
+        }
+        tracker.restore(gen, generation);
+        LongList out = new LongList(gen.size());
+        for (int slot = 0; slot < gen.capacity(); ++slot) {
+            if (gen.keyAt(slot) != CellTable.EMPTY) {
+                out.add(gen.keyAt(slot));
+            }
+        }
+        listener.escaped(lane, generation - start[lane], out);
+        free(lane);
+        fill(lane, listener);
+    }
+
+    /**
+     * Checks if cells lie within the grid, but not in its outermost ring.
+     * @param gen the cells in grid coordinates.
+     * @return true if all cells are inside.
+     */
+    private boolean inside(CellTable gen) {
+        for (int slot = 0; slot < gen.capacity(); ++slot) {
+            long key = gen.keyAt(slot);
+            if (key != CellTable.EMPTY && (CellTable.x(key) < 1 || CellTable.x(key) > width - 2
+                    || CellTable.y(key) < 1 || CellTable.y(key) > height - 2)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determines the stable lanes (with known period) whose spaceships can never come back, see
+     * {@link SpaceshipTracker#safeForever(CellStore, long, long, long, long)}.
+     * @return a bit mask of the lanes whose spaceships will never come near the cells in the grid.
+     */
+    private long shipsSafe() {
+        long lanesSafe = 0;
+        for (long lanes = shipLanes & stable & ~pending & ~safe; lanes != 0; lanes &= lanes - 1) {
+            int lane = Long.numberOfTrailingZeros(lanes);
+            if (trackers[lane].safeForever(laneCells(lane), generation, 0, 0, periods[lane])) {
+                lanesSafe |= 1L << lane;
+            }
+        }
+        return lanesSafe;
+    }
+
+    /**
+     * Computes the next generation of all lanes.
+     */
+    public void step() {
+        // cells can only be born next to live cells, so only the columns around the live ones are computed
+        int lo = Math.max(minColumn - 1, 1);
+        int hi = Math.min(maxColumn + 1, width);
+        for (int y = 1; y <= height; ++y) {
+            int row = y * stride;
+            if (rowLanes[y] == 0) {
+                continue;
+            }
+            for (int i = row + lo; i <= row + hi; ++i) {
+                long a = cells[i - 1], b = cells[i], c = cells[i + 1];
+                sum0[i] = a ^ b ^ c;
+                sum1[i] = (a & b) | (c & (a ^ b));
+            }
+        }
+
+        int newMin = width + 1, newMax = 0;
+        for (int y = 1; y <= height; ++y) {
+            int row = y * stride;
+            if ((rowLanes[y - 1] | rowLanes[y] | rowLanes[y + 1]) == 0) {
+                if (nextRowLanes[y] != 0) {
+                    Arrays.fill(next, row, row + stride, 0);
+                    nextRowLanes[y] = 0;
+                }
+                continue;
+            }
+            if (nextMinColumn < lo) {
+                Arrays.fill(next, row + nextMinColumn, row + lo, 0);
+            }
+            if (nextMaxColumn > hi) {
+                Arrays.fill(next, row + hi + 1, row + nextMaxColumn + 1, 0);
+            }
+            // the horizontal sums of empty rows are stale, those of the padding row above the grid are always 0
+            int above = rowLanes[y - 1] != 0 ? -stride : -row;
+            int middle = rowLanes[y] != 0 ? 0 : -row;
+            int below = rowLanes[y + 1] != 0 ? stride : -row;
+            long lanes = 0;
+            for (int i = row + lo; i <= row + hi; ++i) {
+                long a0 = sum0[i + above], a1 = sum1[i + above];
+                long b0 = sum0[i + middle], b1 = sum1[i + middle];
+                long c0 = sum0[i + below], c1 = sum1[i + below];
+                // (s0, s1, k1) = a + b
+                long s0 = a0 ^ b0, k0 = a0 & b0;
+                long s1 = a1 ^ b1 ^ k0, k1 = (a1 & b1) | (k0 & (a1 ^ b1));
+                // (t0, t1, t2, t3) = a + b + c, the number of live cells in the 3x3 block
+                long t0 = s0 ^ c0, m0 = s0 & c0;
+                long t1 = s1 ^ c1 ^ m0, m1 = (s1 & c1) | (m0 & (s1 ^ c1));
+                long t2 = k1 ^ m1, t3 = k1 & m1;
+                long n = ~t3 & ((t0 & t1 & ~t2) | (cells[i] & ~t0 & ~t1 & t2));
+                next[i] = n;
+                lanes |= n;
+            }
+            nextRowLanes[y] = lanes;
+            if (lanes != 0) {
+                int first = lo, last = hi;
+                while (first < newMin && next[row + first] == 0) {
+                    ++first;
+                }
+                while (last > newMax && next[row + last] == 0) {
+                    --last;
+                }
+                newMin = Math.min(newMin, first);
+                newMax = Math.max(newMax, last);
+            }
+        }
+
+        nextMinColumn = minColumn;
+        nextMaxColumn = maxColumn;
+        minColumn = newMin;
+        maxColumn = newMax;
+        long[] tmp = cells;
+        cells = next;
+        next = tmp;
+        tmp = rowLanes;
+        rowLanes = nextRowLanes;
+        nextRowLanes = tmp;
+        ++generation;
+    }
+
+    /**
+     * Determines the lanes with live cells in the outermost ring of the grid.
+     * @return a bit mask of the lanes.
+     */
+    private long borderLanes() {
+        long lanes = rowLanes[1] | rowLanes[height];
+        for (int y = 2; y < height; ++y) {
+            lanes |= cells[y * stride + 1] | cells[y * stride + width];
+        }
+        return lanes;
+    }
+
+    /**
+     * Determines the lanes with live cells outside the central quarter of the grid (half its width and height).
+     * @return a bit mask of the lanes.
+     */
+    private long outerLanes() {
+        int left = width / 4, right = width - width / 4, top = height / 4, bottom = height - height / 4;
+        long lanes = 0;
+        for (int y = 1; y <= height; ++y) {
+            if (rowLanes[y] == 0) {
+                continue;
+            }
+            if (y <= top || y > bottom) {
+                lanes |= rowLanes[y];
+                continue;
+            }
+            for (int i = y * stride + minColumn; i <= y * stride + left; ++i) {
+                lanes |= cells[i];
+            }
+            for (int i = y * stride + right + 1; i <= y * stride + maxColumn; ++i) {
+                lanes |= cells[i];
+            }
+        }
+        return lanes;
+    }
+
+    /**
+     * Removes the cells of some lanes; they are no longer considered stable.
+     * @param lanes a bit mask of the lanes.
+     */
+    private void clear(long lanes) {
+        stable &= ~lanes;
+        pending &= ~lanes;
+        safe &= ~lanes;
+        for (int y = 1; y <= height; ++y) {
+            if ((rowLanes[y] & lanes) == 0) {
+                continue;
+            }
+            for (int i = y * stride + 1; i <= y * stride + width; ++i) {
+                cells[i] &= ~lanes;
+            }
+            rowLanes[y] &= ~lanes;
+        }
+    }
+
+    /**
+     * Compares the current generation with the snapshot where due: resolves the periods of pending lanes at the
+     * divisors of {@link #CHECK_INTERVAL}, finds new stable lanes and takes the next snapshot at multiples of it.
+     */
+    private void check() {
+        int phase = (int) (generation % CHECK_INTERVAL);
+        if (pending != 0 && (phase == 0 || CHECK_INTERVAL % phase == 0)) {
+            long same = pending & ~differences();
+            for (long lanes = same; lanes != 0; lanes &= lanes - 1) {
+                periods[Long.numberOfTrailingZeros(lanes)] = phase == 0 ? CHECK_INTERVAL : phase;
+            }
+            pending &= ~same;
+        }
+        if (phase != 0) {
+            return;
+        }
+        if (generation > 0) {
+            // a lane filled since the last snapshot is compared with its cleared snapshot, so only an empty lane
+            // matches, which is periodic as well
+            long found = active & ~stable & ~differences();
+            stable |= found;
+            pending |= found;
+        }
+        for (int y = 1; y <= height; ++y) {
+            if ((rowLanes[y] | snapshotRowLanes[y]) != 0) {
+                System.arraycopy(cells, y * stride, snapshot, y * stride, stride);
+                snapshotRowLanes[y] = rowLanes[y];
+            }
+        }
+    }
+
+    /**
+     * Compares the current generation with the snapshot.
+     * @return a bit mask of the lanes differing in any cell.
+     */
+    private long differences() {
+        long lanes = 0;
+        for (int y = 1; y <= height; ++y) {
+            // rows without live cells in either are empty in both
+            if ((rowLanes[y] | snapshotRowLanes[y]) == 0) {
+                continue;
+            }
+            for (int i = y * stride + 1; i <= y * stride + width; ++i) {
+                lanes |= cells[i] ^ snapshot[i];
+            }
+        }
+        return lanes;
+    }
+}
@@ -0,0 +1,253 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Runs random soups (square patterns of random cells) for a number of generations and prints the final population
+ * of each soup, either 64 soups at a time by {@link SoupBatch} or one by one by {@link Life}.
+ *
+ * Soup i is generated from the seed i + the base seed, so both engines run the same soups. In batch mode, the
+ * spaceships escaping from a soup are tracked analytically, and soups still reaching the border of the batch grid are
+ * continued by {@link Life} from the generation they reached it, so both engines print identical populations.
+ */
+public class SoupSearch {
+
+    /**
+     * The number of soups.
+     */
+    private final int soups;
+
+    /**
+     * The side length of a soup.
+     */
+    private final int soupSize;
+
+    /**
+     * The side length of the batch grid.
+     */
+    private final int gridSize;
+
+    /**
+     * The base seed of the soups.
+     */
+    private final long seed;
+
+    /**
+     * The number of generations to run.
+     */
+    private final long generations;
+
+    /**
+     * The final population of each soup.
+     */
+    private final int[] populations;
+
+    /**
+     * The number of soups found to be periodic by a batch.
+     */
+    private int stable;
+
+    /**
+     * The number of soups continued by {@link Life}.
+     */
+    private int escaped;
+
+    /**
+     * Constructor.
+     * @param soups the number of soups.
+     * @param soupSize the side length of a soup.
+     * @param gridSize the side length of the batch grid.
+     * @param seed the base seed of the soups.
+     * @param generations the number of generations to run.
+     */
+    public SoupSearch(int soups, int soupSize, int gridSize, long seed, long generations) {
+        if (soupSize > gridSize - 2) {
+            throw new IllegalArgumentException("soup does not fit into the grid: " + soupSize + " > " + gridSize + " - 2");
+        }
+        this.soups = soups;
+        this.soupSize = soupSize;
+        this.gridSize = gridSize;
+        this.seed = seed;
+        this.generations = generations;
+        this.populations = new int[soups];
+    }
+
+    /**
+     * Generates a soup, density 1/2, centered in the batch grid.
+     * @param soup the number of the soup.
+     * @param cells receives the cells, packed by {@link CellTable#key(long, long)}.
+     */
+    private void soup(int soup, LongList cells) {
+        Random random = new Random(seed + soup);
+        int offset = (gridSize - soupSize) / 2;
+        cells.clear();
+        for (int y = 0; y < soupSize; ++y) {
+            for (int x = 0; x < soupSize; ++x) {
+                if (random.nextBoolean()) {
+                    cells.add(CellTable.key(offset + x, offset + y));
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs cells by {@link Life}, detecting cycles and escaping spaceships.
+     * @param cells the cells.
+     * @param generations the number of generations.
+     * @return the final population.
+     */
+    private static int runLife(LongList cells, long generations) {
+        Life life = new Life(Life.StepMode.NEIGHBOUR_COUNTS, 1);
+        life.addCells(cells.elements(), cells.size());
+        life.advance(generations, true, true);
+        int population = life.countCells();
+        life.shutdown();
+        return population;
+    }
+
+    /**
+     * Runs all soups one by one by {@link Life}.
+     */
+    public void runSparse() {
+        LongList cells = new LongList(soupSize * soupSize);
+        for (int soup = 0; soup < soups; ++soup) {
+            soup(soup, cells);
+            populations[soup] = runLife(cells, generations);
+        }
+    }
+
+    /**
+     * Runs the soups by a {@link SoupBatch}, 64 at a time: a lane is refilled with the next soup as soon as the final
+     * population of its soup is known.
+     */
+    public void runBatches() {
+        LongList cells = new LongList(soupSize * soupSize);
+        SoupBatch batch = new SoupBatch(gridSize, gridSize);
+        int[] laneSoups = new int[SoupBatch.LANES];
+        batch.run(generations, new SoupBatch.LaneListener() {
+
+            /**
+             * The next soup to start.
+             */
+            private int nextSoup;
+
+            @Override
+            public boolean refill(int lane) {
+                if (nextSoup == soups) {
+                    return false;
+                }
+                laneSoups[lane] = nextSoup;
+                soup(nextSoup++, cells);
+                for (int i = 0; i < cells.size(); ++i) {
+                    batch.set(lane, (int) CellTable.x(cells.get(i)), (int) CellTable.y(cells.get(i)));
+                }
+                return true;
+            }
+
+            @Override
+            public void finished(int lane, int population, boolean periodic) {
+                populations[laneSoups[lane]] = population;
+                stable += periodic ? 1 : 0;
+            }
+
+            @Override
+            public void escaped(int lane, long generation, LongList laneCells) {
+                populations[laneSoups[lane]] = runLife(laneCells, generations - generation);
+                ++escaped;
+            }
+        });
+    }
+
+    /**
+     * Writes the final population of every soup, one "soup population" line per soup.
+     * @param out the writer.
+     * @throws IOException if writing fails.
+     */
+    public void writePopulations(Writer out) throws IOException {
+        for (int soup = 0; soup < soups; ++soup) {
+            out.write(soup + " " + populations[soup] + "\n");
+        }
+        out.flush();
+    }
+
+    /**
+     * Prints the usage message and exits.
+     */
+    private static void usage() {
+        System.err.format("Usage: java %s [-e batch|sparse] [-n #soups] [-z soupsize] [-w gridsize] [-s seed] #generations >populations%n", SoupSearch.class.getName());
+        System.exit(1);
+    }
+
+    /**
+     * main().
+     * @param args cmd line arguments
+     */
+    public static void main(String[] args) {
+        boolean batch = true;
+        int soups = 1024;
+        int soupSize = 16;
+        int gridSize = 512;
+        long seed = 0;
+
+        // parse options.
+        int argIdx = 0;
+        while (argIdx < args.length - 1 && args[argIdx].startsWith("-")) {
+            String option = args[argIdx++];
+            String value = args[argIdx++];
+            switch (option) {
+                case "-e":
+                    if (value.equals("batch")) {
+                        batch = true;
+                    } else if (value.equals("sparse")) {
+                        batch = false;
+                    } else {
+                        usage();
+                    }
+                    break;
+                case "-n":
+                    soups = Integer.parseInt(value);
+                    break;
+                case "-z":
+                    soupSize = Integer.parseInt(value);
+                    break;
+                case "-w":
+                    gridSize = Integer.parseInt(value);
+                    break;
+                case "-s":
+                    seed = Long.parseLong(value);
+                    break;
+                default:
+                    usage();
+            }
+        }
+
+        // arguments checking.
+        if (argIdx != args.length - 1 || soups < 1 || soupSize < 1 || gridSize < soupSize + 2) {
+            usage();
+        }
+
+        SoupSearch search = new SoupSearch(soups, soupSize, gridSize, seed, Long.parseLong(args[argIdx]));
+        long start = System.nanoTime();
+        if (batch) {
+            search.runBatches();
+        } else {
+            search.runSparse();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        try {
+            search.writePopulations(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.US_ASCII)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        System.err.format("%d soups in %.2fs (%.0f soups/s)%n", soups, seconds, soups / seconds);
+        if (batch) {
+            System.err.format("%d periodic, %d continued by Life, %d unsettled%n", search.stable, search.escaped,
+                    soups - search.stable - search.escaped);
+        }
+    }
+}
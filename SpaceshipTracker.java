@@ -0,0 +1,608 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Takes spaceships (e.g. gliders) flying away from the rest of the pattern out of the simulation and advances them
+ * analytically instead, by their translation per period.
+ *
+ * Every {@link #INTERVAL} generations, the components (cells connected within a distance of 2) at the border of the
+ * pattern are examined: a component of at most {@link #MAX_CELLS} cells is released as a spaceship if, simulated in
+ * isolation, it repeats translated within {@link #MAX_PERIOD} generations, moves away from the rest of the pattern
+ * and is far enough from it, see below.
+ *
+ * Nothing in Life travels faster than light (one cell per generation): a cell can only be born next to a live cell,
+ * and two groups of cells at a distance of at least {@link #MARGIN} evolve independently of each other for one
+ * generation. So a spaceship lying beyond all simulated cells along its direction of escape by at least
+ * MARGIN + INTERVAL cells cannot be affected by them for the next INTERVAL generations. This is checked for every
+ * released spaceship at every interval; a spaceship which does not keep its distance is put back into the
+ * simulation. Two spaceships never meet if they are apart along some direction and the one ahead is at least as fast
+ * along this direction as the other; a spaceship is only released if this holds for all released spaceships.
+ */
+public class SpaceshipTracker {
+
+    /**
+     * The number of generations between two checks.
+     */
+    static final int INTERVAL = 32;
+
+    /**
+     * The min. distance (coordinate difference) between two groups of cells evolving independently for one
+     * generation.
+     */
+    private static final int MARGIN = 3;
+
+    /**
+     * The max. number of cells of a spaceship.
+     */
+    private static final int MAX_CELLS = 64;
+
+    /**
+     * The max. period of a spaceship.
+     */
+    private static final int MAX_PERIOD = 16;
+
+    /**
+     * The max. number of spaceships released together, see {@link #release}.
+     */
+    private static final int MAX_GROUP = 8;
+
+    /**
+     * The number of directions of escape: east (+x), west (-x), north (+y), south (-y).
+     */
+    private static final int DIRECTIONS = 4;
+
+    /**
+     * The released spaceships.
+     */
+    private final List<Spaceship> ships = new ArrayList<>();
+
+    /**
+     * A spaceship taken out of the simulation.
+     */
+    private static final class Spaceship {
+
+        /**
+         * The cells of each phase of the first period, phase i being the generation origin + i.
+         */
+        final long[][] phases;
+
+        /**
+         * The X translation per period.
+         */
+        final long dx;
+
+        /**
+         * The Y translation per period.
+         */
+        final long dy;
+
+        /**
+         * The generation of phase 0.
+         */
+        final long origin;
+
+        /**
+         * The direction of escape.
+         */
+        final int direction;
+
+        /**
+         * The bounding box of all phases of the first period: min. X, max. X, min. Y, max. Y.
+         */
+        final long[] bounds;
+
+        /**
+         * Constructor.
+         * @param phases the cells of each phase of the first period.
+         * @param dx the X translation per period.
+         * @param dy the Y translation per period.
+         * @param origin the generation of phase 0.
+         * @param direction the direction of escape.
+         * @param bounds the bounding box of all phases of the first period.
+         */
+        Spaceship(long[][] phases, long dx, long dy, long origin, int direction, long[] bounds) {
+            this.phases = phases;
+            this.dx = dx;
+            this.dy = dy;
+            this.origin = origin;
+            this.direction = direction;
+            this.bounds = bounds;
+        }
+
+        /**
+         * Returns the velocity of the spaceship along a direction.
+         * @param direction the direction.
+         * @return the cells per generation.
+         */
+        double velocity(int direction) {
+            return (double) project(dx, dy, direction) / phases.length;
+        }
+
+        /**
+         * Returns the distance the spaceship moves along a direction per period.
+         * @param direction the direction.
+         * @return the absolute distance.
+         */
+        long step(int direction) {
+            return Math.abs(project(dx, dy, direction));
+        }
+
+        /**
+         * Returns the nearest (min.) coordinate of the spaceship along a direction, valid for the whole period
+         * containing a generation.
+         * @param generation the generation.
+         * @param direction the direction.
+         * @return the min. projected coordinate.
+         */
+        long near(long generation, int direction) {
+            long periods = (generation - origin) / phases.length;
+            return Math.min(project(moved(bounds[0], periods, dx), moved(bounds[2], periods, dy), direction),
+                    project(moved(bounds[1], periods, dx), moved(bounds[3], periods, dy), direction));
+        }
+
+        /**
+         * Returns the farthest (max.) coordinate of the spaceship along a direction, valid for the whole period
+         * containing a generation.
+         * @param generation the generation.
+         * @param direction the direction.
+         * @return the max. projected coordinate.
+         */
+        long far(long generation, int direction) {
+            long periods = (generation - origin) / phases.length;
+            return Math.max(project(moved(bounds[0], periods, dx), moved(bounds[2], periods, dy), direction),
+                    project(moved(bounds[1], periods, dx), moved(bounds[3], periods, dy), direction));
+        }
+
+        /**
+         * Adds the cells of the spaceship at a generation to a generation table.
+         * @param gen the generation table.
+         * @param generation the generation.
+         * @throws ArithmeticException if the spaceship has left the coordinate range read by {@link CellReader}.
+         */
+        void addTo(CellStore gen, long generation) {
+            long periods = (generation - origin) / phases.length;
+            long offsetX = Math.multiplyExact(periods, dx);
+            long offsetY = Math.multiplyExact(periods, dy);
+            // compared as offsets, the moved coordinates might overflow
+            if (offsetX < -CellReader.MAX_COORDINATE - bounds[0] || offsetX > CellReader.MAX_COORDINATE - bounds[1]
+                    || offsetY < -CellReader.MAX_COORDINATE - bounds[2] || offsetY > CellReader.MAX_COORDINATE - bounds[3]) {
+                throw new ArithmeticException("spaceship out of the coordinate range at generation " + generation);
+            }
+            long[] cells = phases[(int) ((generation - origin) % phases.length)];
+            for (long key : cells) {
+                gen.add(CellTable.key(CellTable.x(key) + offsetX, CellTable.y(key) + offsetY));
+            }
+        }
+
+        /**
+         * Moves a coordinate by whole periods.
+         * @param coordinate the coordinate.
+         * @param periods the number of periods.
+         * @param delta the translation per period.
+         * @return the moved coordinate.
+         * @throws ArithmeticException if the result overflows a long.
+         */
+        private static long moved(long coordinate, long periods, long delta) {
+            return Math.addExact(coordinate, Math.multiplyExact(periods, delta));
+        }
+    }
+
+    /**
+     * Projects a position onto a direction.
+     * @param x the X coordinate.
+     * @param y the Y coordinate.
+     * @param direction the direction.
+     * @return the coordinate along the direction.
+     */
+    private static long project(long x, long y, int direction) {
+        switch (direction) {
+            case 0:
+                return x;
+            case 1:
+                return -x;
+            case 2:
+                return y;
+            default:
+                return -y;
+        }
+    }
+
+    /**
+     * Returns the number of spaceships currently taken out of the simulation.
+     * @return the number of spaceships.
+     */
+    public int size() {
+        return ships.size();
+    }
+
+    /**
+     * Returns the number of cells of all spaceships taken out of the simulation.
+     * @param generation the current generation.
+     * @return the number of cells.
+     */
+    public int cells(long generation) {
+        int cells = 0;
+        for (Spaceship ship : ships) {
+            cells += ship.phases[(int) ((generation - ship.origin) % ship.phases.length)].length;
+        }
+        return cells;
+    }
+
+    /**
+     * Puts back the spaceships which came too close to other cells, then releases new spaceships. Must be called every
+     * {@link #INTERVAL} generations (or {@link #recall(CellStore, long)} instead).
+     * @param gen the current generation table, without the released spaceships.
+     * @param generation the current generation.
+     * @return true if cells were added to or removed from the table.
+     */
+    public boolean update(CellStore gen, long generation) {
+        boolean changed = recall(gen, generation, MARGIN + INTERVAL);
+        for (int direction = 0; direction < DIRECTIONS; ++direction) {
+            while (release(gen, generation, direction)) {
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Puts back the spaceships which came too close to other cells, like {@link #update(CellStore, long)} but without
+     * looking for new spaceships to release, which is much cheaper. Either must be called every {@link #INTERVAL}
+     * generations.
+     * @param gen the current generation table, without the released spaceships.
+     * @param generation the current generation.
+     * @return true if cells were added to the table.
+     */
+    public boolean recall(CellStore gen, long generation) {
+        return recall(gen, generation, MARGIN + INTERVAL);
+    }
+
+    /**
+     * Adds all spaceships to the simulated cells.
+     * @param gen the current generation table.
+     * @param generation the current generation.
+     */
+    public void restore(CellStore gen, long generation) {
+        for (Spaceship ship : ships) {
+            ship.addTo(gen, generation);
+        }
+        ships.clear();
+    }
+
+    /**
+     * Checks if no spaceship will ever come near other cells, given that the simulated cells repeat translated.
+     * @param gen the current generation table, without the released spaceships.
+     * @param generation the current generation.
+     * @param dx the X translation per period of the simulated cells.
+     * @param dy the Y translation per period of the simulated cells.
+     * @param period the period of the simulated cells.
+     * @return true if all spaceships are moving away from all other cells at least as fast as those.
+     */
+    public boolean safeForever(CellStore gen, long generation, long dx, long dy, long period) {
+        if (ships.isEmpty() || gen.size() == 0) {
+            return true;
+        }
+        long[] distances = distances(gen, generation);
+        for (int i = 0; i < ships.size(); ++i) {
+            Spaceship ship = ships.get(i);
+            int direction = ship.direction;
+            // within a period, the simulated cells may grow at light speed, the spaceship moves by up to one step
+            if (distances[i] < MARGIN + 2 * period + 2 * ship.step(direction)
+                    || (double) project(dx, dy, direction) / period > ship.velocity(direction)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Puts back all spaceships not lying beyond all other cells along their direction of escape by a min. distance.
+     * @param gen the current generation table, without the released spaceships.
+     * @param generation the current generation.
+     * @param distance the min. distance.
+     * @return true if spaceships were put back.
+     */
+    private boolean recall(CellStore gen, long generation, long distance) {
+        if (ships.isEmpty()) {
+            return false;
+        }
+        long[] distances = distances(gen, generation);
+        List<Spaceship> kept = new ArrayList<>(ships.size());
+        for (int i = 0; i < ships.size(); ++i) {
+            if (distances[i] < distance) {
+                ships.get(i).addTo(gen, generation);
+            } else {
+                kept.add(ships.get(i));
+            }
+        }
+        if (kept.size() == ships.size()) {
+            return false;
+        }
+        ships.clear();
+        ships.addAll(kept);
+        return true;
+    }
+
+    /**
+     * Calculates the distance of each spaceship to the simulated cells along its direction of escape.
+     * @param gen the current generation table, without the released spaceships.
+     * @param generation the current generation.
+     * @return the distance per spaceship (index as in {@link #ships}), Long.MAX_VALUE if there are no simulated cells.
+     */
+    private long[] distances(CellStore gen, long generation) {
+        long[] cellsFar = farthest(gen);
+        long[] distances = new long[ships.size()];
+        for (int i = 0; i < ships.size(); ++i) {
+            Spaceship ship = ships.get(i);
+            int direction = ship.direction;
+            distances[i] = gen.size() == 0 ? Long.MAX_VALUE : ship.near(generation, direction) - cellsFar[direction];
+        }
+        return distances;
+    }
+
+    /**
+     * Checks if two spaceships will never meet: one of them is ahead of the other along some direction, and at least
+     * as fast along this direction.
+     * @param a the first spaceship.
+     * @param b the second spaceship.
+     * @param generation the current generation.
+     * @return true if the spaceships will never meet.
+     */
+    private static boolean apart(Spaceship a, Spaceship b, long generation) {
+        for (int direction = 0; direction < DIRECTIONS; ++direction) {
+            // the positions of both are known up to one step per period
+            if (a.near(generation, direction) - b.far(generation, direction)
+                    >= MARGIN + 2 * (a.step(direction) + b.step(direction))
+                    && a.velocity(direction) >= b.velocity(direction)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determines the farthest coordinate of the cells of a generation along each direction.
+     * @param gen the generation table.
+     * @return the max. projected coordinate per direction, Long.MIN_VALUE if the table is empty.
+     */
+    private static long[] farthest(CellStore gen) {
+        long[] far = new long[DIRECTIONS];
+        Arrays.fill(far, Long.MIN_VALUE);
+        for (int slot = 0; slot < gen.capacity(); ++slot) {
+            long key = gen.keyAt(slot);
+            if (key == CellTable.EMPTY) {
+                continue;
+            }
+            for (int direction = 0; direction < DIRECTIONS; ++direction) {
+                far[direction] = Math.max(far[direction], project(CellTable.x(key), CellTable.y(key), direction));
+            }
+        }
+        return far;
+    }
+
+    /**
+     * Releases the spaceships at the border of the pattern along a direction: the components holding the farthest
+     * cells are collected as long as they are spaceships escaping in this direction, until the collected ones are far
+     * enough from the remaining cells (e.g. gliders flying side by side are released together).
+     * @param gen the current generation table, without the released spaceships.
+     * @param generation the current generation.
+     * @param direction the direction.
+     * @return true if spaceships were released.
+     */
+    private boolean release(CellStore gen, long generation, int direction) {
+        List<Spaceship> group = new ArrayList<>();
+        CellTable taken = new CellTable(2 * MAX_CELLS);
+        long groupNear = Long.MAX_VALUE;
+        while (group.size() < MAX_GROUP) {
+            // the farthest remaining cell is the start of the next component, the one after it the nearest other cell
+            long start = CellTable.EMPTY;
+            long startFar = Long.MIN_VALUE;
+            for (int slot = 0; slot < gen.capacity(); ++slot) {
+                long key = gen.keyAt(slot);
+                if (key != CellTable.EMPTY && !taken.contains(key)
+                        && project(CellTable.x(key), CellTable.y(key), direction) > startFar) {
+                    start = key;
+                    startFar = project(CellTable.x(key), CellTable.y(key), direction);
+                }
+            }
+            if (!group.isEmpty() && (start == CellTable.EMPTY || groupNear - startFar >= MARGIN + INTERVAL)) {
+                break;
+            }
+            if (start == CellTable.EMPTY) {
+                return false;
+            }
+
+            CellTable component = component(gen, start);
+            if (component == null) {
+                return false;
+            }
+            Spaceship ship = spaceship(component, generation, direction);
+            if (ship == null || ship.velocity(direction) <= 0) {
+                return false;
+            }
+            for (Spaceship other : group) {
+                if (!apart(ship, other, generation) && !apart(other, ship, generation)) {
+                    return false;
+                }
+            }
+            group.add(ship);
+            groupNear = Math.min(groupNear, ship.near(generation, direction));
+            for (long key : ship.phases[0]) {
+                taken.add(key);
+            }
+        }
+        if (group.size() == MAX_GROUP) {
+            return false;
+        }
+
+        for (Spaceship ship : group) {
+            for (Spaceship other : ships) {
+                if (!apart(ship, other, generation) && !apart(other, ship, generation)) {
+                    return false;
+                }
+            }
+        }
+        for (Spaceship ship : group) {
+            for (long key : ship.phases[0]) {
+                gen.remove(key);
+            }
+            ships.add(ship);
+        }
+        return true;
+    }
+
+    /**
+     * Collects the component of a cell, i.e. all cells reachable in steps of a max. distance of 2.
+     * @param gen the generation table.
+     * @param start the cell.
+     * @return the cells of the component or null if it has more than {@link #MAX_CELLS} cells.
+     */
+    private static CellTable component(CellStore gen, long start) {
+        CellTable component = new CellTable(2 * MAX_CELLS);
+        LongList pending = new LongList(MAX_CELLS);
+        component.add(start);
+        pending.add(start);
+        for (int i = 0; i < pending.size(); ++i) {
+            long x = CellTable.x(pending.get(i));
+            long y = CellTable.y(pending.get(i));
+            for (long nx = x - 2; nx <= x + 2; ++nx) {
+                for (long ny = y - 2; ny <= y + 2; ++ny) {
+                    long key = CellTable.key(nx, ny);
+                    if (gen.contains(key) && component.add(key)) {
+                        if (component.size() > MAX_CELLS) {
+                            return null;
+                        }
+                        pending.add(key);
+                    }
+                }
+            }
+        }
+        return component;
+    }
+
+    /**
+     * Simulates a component in isolation until it repeats translated.
+     * @param component the cells of the component.
+     * @param generation the current generation.
+     * @param direction the direction of escape.
+     * @return the spaceship or null if the component is no spaceship of a period up to {@link #MAX_PERIOD}.
+     */
+    private static Spaceship spaceship(CellTable component, long generation, int direction) {
+        List<long[]> phases = new ArrayList<>();
+        long[] bounds = {Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+        long[] first = cells(component, bounds);
+        long[] firstMin = min(first);
+        phases.add(first);
+        CellTable gen = component;
+        for (int period = 1; period <= MAX_PERIOD; ++period) {
+            gen = step(gen);
+            if (gen.size() == first.length) {
+                long[] cells = cells(gen, new long[] {Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE});
+                long[] min = min(cells);
+                long dx = min[0] - firstMin[0];
+                long dy = min[1] - firstMin[1];
+                if (translated(first, gen, dx, dy)) {
+                    if (dx == 0 && dy == 0) {
+                        return null;
+                    }
+                    return new Spaceship(phases.toArray(new long[0][]), dx, dy, generation, direction, bounds);
+                }
+            }
+            if (gen.size() == 0) {
+                return null;
+            }
+            phases.add(cells(gen, bounds));
+        }
+        return null;
+    }
+
+    /**
+     * Copies the cells of a table into an array, extending a bounding box.
+     * @param gen the table.
+     * @param bounds the bounding box (min. X, max. X, min. Y, max. Y), extended to cover the cells.
+     * @return the cells.
+     */
+    private static long[] cells(CellStore gen, long[] bounds) {
+        long[] cells = new long[gen.size()];
+        int count = 0;
+        for (int slot = 0; slot < gen.capacity(); ++slot) {
+            long key = gen.keyAt(slot);
+            if (key != CellTable.EMPTY) {
+                cells[count++] = key;
+                bounds[0] = Math.min(bounds[0], CellTable.x(key));
+                bounds[1] = Math.max(bounds[1], CellTable.x(key));
+                bounds[2] = Math.min(bounds[2], CellTable.y(key));
+                bounds[3] = Math.max(bounds[3], CellTable.y(key));
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Determines the min. coordinates of cells.
+     * @param cells the cells.
+     * @return the min. X and Y coordinate.
+     */
+    private static long[] min(long[] cells) {
+        long[] min = {Long.MAX_VALUE, Long.MAX_VALUE};
+        for (long key : cells) {
+            min[0] = Math.min(min[0], CellTable.x(key));
+            min[1] = Math.min(min[1], CellTable.y(key));
+        }
+        return min;
+    }
+
+    /**
+     * Checks if a table holds the given cells translated by an offset.
+     * @param cells the cells.
+     * @param gen the table, having as many cells as given.
+     * @param dx the X offset.
+     * @param dy the Y offset.
+     * @return true if the table holds all translated cells.
+     */
+    private static boolean translated(long[] cells, CellStore gen, long dx, long dy) {
+        for (long key : cells) {
+            if (!gen.contains(CellTable.key(CellTable.x(key) + dx, CellTable.y(key) + dy))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes the next generation of a few cells by counting neighbours.
+     * @param gen the generation.
+     * @return the next generation.
+     */
+    private static CellTable step(CellTable gen) {
+        CellTable counts = new CellTable(16 * gen.size());
+        for (int slot = 0; slot < gen.capacity(); ++slot) {
+            long key = gen.keyAt(slot);
+            if (key == CellTable.EMPTY) {
+                continue;
+            }
+            long x = CellTable.x(key);
+            long y = CellTable.y(key);
+            for (long nx = x - 1; nx <= x + 1; ++nx) {
+                for (long ny = y - 1; ny <= y + 1; ++ny) {
+                    if (nx != x || ny != y) {
+                        counts.increment(CellTable.key(nx, ny));
+                    }
+                }
+            }
+        }
+        CellTable next = new CellTable(2 * gen.size());
+        for (int slot = 0; slot < counts.capacity(); ++slot) {
+            long key = counts.keyAt(slot);
+            if (key == CellTable.EMPTY) {
+                continue;
+            }
+            int n = counts.valueAt(slot);
+            if (n == 3 || (n == 2 && gen.contains(key))) {
+                next.add(key);
+            }
+        }
+        return next;
+    }
+}
@@ -0,0 +1,752 @@
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Game-of-life implementation storing the universe as a sparse set of 64x64 bitboard tiles.
+ *
+ * Each tile holds one long per row (bit i of a row represents the cell at X offset i). Tiles are indexed by their
+ * tile coordinates in a {@link CellTable}, whose values are tile indices into flat per-tile arrays. Every tile owns
+ * two row buffers: the current generation and the generation before its last update. A generation is computed with
+ * bit-sliced adders over whole rows, i.e. 64 cells at once, by a {@link RowKernel}: the vector API kernel processing
+ * several rows per instruction if the module jdk.incubator.vector is available, the scalar one otherwise.
+ *
+ * With activity tracking enabled, only tiles next to a change of the previous generation are considered:
+ * - a tile whose surrounding cells did not change keeps its state and costs nothing.
+ * - a tile whose 3x3 tile neighbourhood equals the one two generations ago (period 2, e.g. blinkers or still lifes
+ *   next to blinkers) flips back to its previous buffer without being computed.
+ * - all other tiles next to a change are computed.
+ * Without activity tracking, every tile and the neighbours next to its live border cells are computed each generation.
+ */
+public class TileLife {
+
+    /**
+     * log2 of the tile width / height.
+     */
+    static final int TILE_SHIFT = 6;
+
+    /**
+     * The tile width / height in cells (the number of rows per tile and bits per row).
+     */
+    static final int TILE_SIZE = 1 << TILE_SHIFT;
+
+    /**
+     * Bit mask for the cell offset within a tile.
+     */
+    private static final int TILE_MASK = TILE_SIZE - 1;
+
+    /**
+     * The number of pool rows per tile (two buffers).
+     */
+    private static final int TILE_STRIDE = 2 * TILE_SIZE;
+
+    /**
+     * Flag: the tile changed in its last update.
+     */
+    private static final int CHANGED = 1;
+
+    /**
+     * Flags: the last update changed the tile's border cells adjacent to the respective neighbour.
+     */
+    private static final int NORTH = 1 << 1, SOUTH = 1 << 2, WEST = 1 << 3, EAST = 1 << 4,
+                             NORTH_WEST = 1 << 5, NORTH_EAST = 1 << 6, SOUTH_WEST = 1 << 7, SOUTH_EAST = 1 << 8;
+
+    /**
+     * Flag: the last update produced the same state as two generations before.
+     */
+    private static final int PERIOD_2 = 1 << 9;
+
+    /**
+     * Flag: the tile is empty but cannot be released yet, it needs to be updated again.
+     */
+    private static final int RECHECK = 1 << 10;
+
+    /**
+     * Flag: the tile has been empty for 3 generations and can be released.
+     */
+    private static final int RELEASE = 1 << 11;
+
+    /**
+     * Flag: the tile's state before its last update is unknown (tile modified by {@link #setCell(long, long)}).
+     */
+    private static final int NO_HISTORY = 1 << 12;
+
+    /**
+     * Flags marking a tile and all of its neighbours as changed.
+     */
+    private static final int ALL_CHANGED = CHANGED | NORTH | SOUTH | WEST | EAST |
+                                           NORTH_WEST | NORTH_EAST | SOUTH_WEST | SOUTH_EAST;
+
+    /**
+     * Tile offsets (X, Y) of the 3x3 tile neighbourhood, in the order used by {@link #neighbourhood}.
+     */
+    private static final int[] DX = {  0, -1, 1,  0, 0, -1,  1, -1, 1 };
+    private static final int[] DY = {  0,  0, 0, -1, 1, -1, -1,  1, 1 };
+
+    /**
+     * The name of the vector API {@link RowKernel}, loaded on demand since it requires the module
+     * jdk.incubator.vector.
+     */
+    private static final String VECTOR_KERNEL = "VectorRowKernel";
+
+    /**
+     * The scalar row kernel, see {@link #stepRows(long[], long[], long[], long[])}.
+     */
+    static final RowKernel SCALAR_KERNEL = TileLife::stepRows;
+
+    /**
+     * true if only tiles next to changes are updated.
+     */
+    private final boolean trackActivity;
+
+    /**
+     * The kernel computing the next generation of a tile's rows.
+     */
+    private final RowKernel kernel;
+
+    /**
+     * Tile table mapping tile coordinates to tile indices.
+     */
+    private final CellTable tiles;
+
+    /**
+     * The rows of all tiles (tile i occupies rows i * TILE_STRIDE to (i + 1) * TILE_STRIDE - 1, buffer b of tile i
+     * starts at i * TILE_STRIDE + b * TILE_SIZE).
+     */
+    private long[] pool;
+
+    /**
+     * The buffer (0 or 1) holding the current generation of each tile.
+     */
+    private byte[] currentBuffer;
+
+    /**
+     * The generation each tile was last updated in (i.e. its current buffer was computed from that generation).
+     */
+    private long[] lastUpdate;
+
+    /**
+     * The flags of each tile, describing its last update.
+     */
+    private int[] flags;
+
+    /**
+     * The number of tile indices handed out so far.
+     */
+    private int numTiles;
+
+    /**
+     * Released tile indices available for reuse.
+     */
+    private int[] freeTiles = new int[64];
+
+    /**
+     * The number of released tile indices.
+     */
+    private int numFreeTiles;
+
+    /**
+     * The tiles to consider in the next generation.
+     */
+    private CellTable active;
+
+    /**
+     * The tiles to consider in the generation after the next one, collected while advancing.
+     */
+    private CellTable activeNext;
+
+    /**
+     * Tile keys and encoded updates (tile index << 32 | flags) of the updates of the current step, applied after all
+     * tiles have been computed.
+     */
+    private final LongList updates = new LongList(1024);
+
+    /**
+     * The current generation number.
+     */
+    private long generation;
+
+    /**
+     * The indices of the 3x3 tile neighbourhood of the tile being computed (-1 for missing tiles).
+     */
+    private final int[] neighbourhood = new int[9];
+
+    /**
+     * Rows of the tile being computed, extended by the adjacent row of the tile above and below
+     * (TILE_SIZE + 2 rows).
+     */
+    private final long[] center = new long[TILE_SIZE + 2];
+
+    /**
+     * Rows holding the west neighbour of each cell of {@link #center}.
+     */
+    private final long[] west = new long[TILE_SIZE + 2];
+
+    /**
+     * Rows holding the east neighbour of each cell of {@link #center}.
+     */
+    private final long[] east = new long[TILE_SIZE + 2];
+
+    /**
+     * The next generation rows of the tile being computed.
+     */
+    private final long[] out = new long[TILE_SIZE];
+
+    /**
+     * Constructor.
+     */
+    public TileLife() {
+        this(false);
+    }
+
+    /**
+     * Constructor.
+     * @param trackActivity true to update only tiles next to changes of the previous generation.
+     */
+    public TileLife(boolean trackActivity) {
+        this(trackActivity, bestKernel());
+    }
+
+    /**
+     * Constructor.
+     * @param trackActivity true to update only tiles next to changes of the previous generation.
+     * @param kernel the kernel computing the next generation of a tile's rows.
+     */
+    public TileLife(boolean trackActivity, RowKernel kernel) {
+        this.trackActivity = trackActivity;
+        this.kernel = kernel;
+        this.tiles = new CellTable(256);
+        this.active = new CellTable(1024);
+        this.activeNext = new CellTable(1024);
+        this.pool = new long[256 * TILE_STRIDE];
+        this.currentBuffer = new byte[256];
+        this.lastUpdate = new long[256];
+        this.flags = new int[256];
+    }
+
+    /**
+     * Creates the vector API row kernel.
+     * @return the kernel or null if the vector API is not available (module jdk.incubator.vector not added) or
+     *         the platform has no suitable vector shape.
+     */
+    static RowKernel vectorKernel() {
+        try {
+            return Class.forName(VECTOR_KERNEL).asSubclass(RowKernel.class).getConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the fastest row kernel available.
+     * @return the vector API kernel if available, the scalar kernel otherwise.
+     */
+    static RowKernel bestKernel() {
+        RowKernel vector = vectorKernel();
+        return vector != null ? vector : SCALAR_KERNEL;
+    }
+
+    /**
+     * Reads the initial cell generation from an input stream.
+     * @param inStream the input stream.
+     * @throws UncheckedIOException if reading fails or the input is malformed.
+     */
+    public void readLife(InputStream inStream) {
+        try {
+            new CellReader(Channels.newChannel(inStream)).readCells(this::setCells);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Makes cells alive in the current generation.
+     * @param keys the packed cell keys.
+     * @param count the number of cells.
+     */
+    private void setCells(long[] keys, int count) {
+        for (int i = 0; i < count; ++i) {
+            setCell(CellTable.x(keys[i]), CellTable.y(keys[i]));
+        }
+    }
+
+    /**
+     * Makes a cell alive in the current generation.
+     * @param x the X coordinate.
+     * @param y the Y coordinate.
+     */
+    public void setCell(long x, long y) {
+        long tx = x >> TILE_SHIFT;
+        long ty = y >> TILE_SHIFT;
+        long tileKey = CellTable.key(tx, ty);
+        int tile = tiles.contains(tileKey) ? tiles.get(tileKey) : allocateTile(tileKey);
+
+        pool[currentBase(tile) + (int) (y & TILE_MASK)] |= 1L << (x & TILE_MASK);
+
+        // the tile's history is unknown now, so it and its neighbours have to be computed
+        lastUpdate[tile] = generation - 1;
+        flags[tile] = ALL_CHANGED | NO_HISTORY;
+        for (int i = 0; i < 9; ++i) {
+            active.add(CellTable.key(tx + DX[i], ty + DY[i]));
+        }
+    }
+
+    /**
+     * Writes the current cell generation to an output stream, sorted like sort(1) would, see
+     * {@link SortedCellWriter}.
+     * @param outStream the output stream.
+     * @throws UncheckedIOException if writing fails.
+     */
+    public void writeLife(OutputStream outStream) {
+        writeLife(Channels.newChannel(outStream));
+    }
+
+    /**
+     * Writes the current cell generation to a channel, sorted like sort(1) would, see {@link SortedCellWriter}.
+     * @param channel the channel.
+     * @throws UncheckedIOException if writing fails.
+     */
+    public void writeLife(WritableByteChannel channel) {
+        LongList cells = new LongList(1024);
+        for (int slot = 0; slot < tiles.capacity(); ++slot) {
+            long tileKey = tiles.keyAt(slot);
+            if (tileKey == CellTable.EMPTY) {
+                continue;
+            }
+            long x0 = CellTable.x(tileKey) << TILE_SHIFT;
+            long y0 = CellTable.y(tileKey) << TILE_SHIFT;
+            int base = currentBase(tiles.valueAt(slot));
+            for (int row = 0; row < TILE_SIZE; ++row) {
+                long bits = pool[base + row];
+                while (bits != 0) {
+                    cells.add(CellTable.key(x0 + Long.numberOfTrailingZeros(bits), y0 + row));
+                    bits &= bits - 1;
+                }
+            }
+        }
+        try {
+            SortedCellWriter.write(cells.elements(), cells.size(), channel);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the number of alive cells in the current generation.
+     * @return the number of alive cells in the current generation.
+     */
+    public int countCells() {
+        int n = 0;
+        for (int slot = 0; slot < tiles.capacity(); ++slot) {
+            if (tiles.keyAt(slot) == CellTable.EMPTY) {
+                continue;
+            }
+            int base = currentBase(tiles.valueAt(slot));
+            for (int row = 0; row < TILE_SIZE; ++row) {
+                n += Long.bitCount(pool[base + row]);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Returns the number of tiles currently allocated.
+     * @return the number of tiles.
+     */
+    public int countTiles() {
+        return tiles.size();
+    }
+
+    /**
+     * Returns the index of the first row of a tile's current buffer in {@link #pool}.
+     * @param tile the tile index.
+     * @return the index of the first row.
+     */
+    private int currentBase(int tile) {
+        return tile * TILE_STRIDE + currentBuffer[tile] * TILE_SIZE;
+    }
+
+    /**
+     * Returns the index of the first row of a tile's other (previous) buffer in {@link #pool}.
+     * @param tile the tile index.
+     * @return the index of the first row.
+     */
+    private int otherBase(int tile) {
+        return tile * TILE_STRIDE + (currentBuffer[tile] ^ 1) * TILE_SIZE;
+    }
+
+    /**
+     * Allocates an empty tile which has been empty ever since.
+     * @param tileKey the tile coordinates.
+     * @return the tile index.
+     */
+    private int allocateTile(long tileKey) {
+        int tile;
+        if (numFreeTiles > 0) {
+            tile = freeTiles[--numFreeTiles];
+        } else {
+            tile = numTiles++;
+            if (tile == flags.length) {
+                int capacity = flags.length * 2;
+                pool = Arrays.copyOf(pool, capacity * TILE_STRIDE);
+                currentBuffer = Arrays.copyOf(currentBuffer, capacity);
+                lastUpdate = Arrays.copyOf(lastUpdate, capacity);
+                flags = Arrays.copyOf(flags, capacity);
+            }
+        }
+        Arrays.fill(pool, tile * TILE_STRIDE, (tile + 1) * TILE_STRIDE, 0);
+        currentBuffer[tile] = 0;
+        lastUpdate[tile] = Long.MIN_VALUE;
+        flags[tile] = 0;
+        tiles.put(tileKey, tile);
+        return tile;
+    }
+
+    /**
+     * Releases a tile.
+     * @param tileKey the tile coordinates.
+     * @param tile the tile index.
+     */
+    private void releaseTile(long tileKey, int tile) {
+        tiles.remove(tileKey);
+        if (numFreeTiles == freeTiles.length) {
+            freeTiles = Arrays.copyOf(freeTiles, numFreeTiles * 2);
+        }
+        freeTiles[numFreeTiles++] = tile;
+    }
+
+    /**
+     * Looks up the 3x3 tile neighbourhood of a tile into {@link #neighbourhood}.
+     * @param tx the X tile coordinate.
+     * @param ty the Y tile coordinate.
+     */
+    private void lookupNeighbourhood(long tx, long ty) {
+        for (int i = 0; i < 9; ++i) {
+            long tileKey = CellTable.key(tx + DX[i], ty + DY[i]);
+            neighbourhood[i] = tiles.contains(tileKey) ? tiles.get(tileKey) : -1;
+        }
+    }
+
+    /**
+     * Checks if a tile's current state equals its state two generations before.
+     * @param tile the tile index or -1 for a missing tile (missing tiles have been empty for 3 generations at least).
+     * @return true if the tile's state equals its state two generations before.
+     */
+    private boolean period2(int tile) {
+        if (tile < 0) {
+            return true;
+        }
+        long last = lastUpdate[tile];
+        if (last == generation - 1) {
+            return (flags[tile] & PERIOD_2) != 0;
+        }
+        if (last == generation - 2) {
+            // unchanged since the last update, so compare the last update with its predecessor
+            return (flags[tile] & CHANGED) == 0;
+        }
+        return true;
+    }
+
+    /**
+     * Returns a row of a tile's current buffer.
+     * @param tile the tile index or -1 for a missing (empty) tile.
+     * @param row the row.
+     * @return the row's bits.
+     */
+    private long row(int tile, int row) {
+        return tile < 0 ? 0 : pool[currentBase(tile) + row];
+    }
+
+    /**
+     * Loads the tile at the center of {@link #neighbourhood} and the adjacent cells of its 8 neighbour tiles into
+     * {@link #west}, {@link #center} and {@link #east}.
+     */
+    private void loadNeighbourhood() {
+        int c = neighbourhood[0];
+        int w = neighbourhood[1];
+        int e = neighbourhood[2];
+        int n = neighbourhood[3];
+        int s = neighbourhood[4];
+        int nw = neighbourhood[5];
+        int ne = neighbourhood[6];
+        int sw = neighbourhood[7];
+        int se = neighbourhood[8];
+
+        // row above the tile
+        long r = row(n, TILE_SIZE - 1);
+        center[0] = r;
+        west[0] = (r << 1) | (row(nw, TILE_SIZE - 1) >>> 63);
+        east[0] = (r >>> 1) | (row(ne, TILE_SIZE - 1) << 63);
+
+        for (int i = 0; i < TILE_SIZE; ++i) {
+            r = row(c, i);
+            center[i + 1] = r;
+            west[i + 1] = (r << 1) | (row(w, i) >>> 63);
+            east[i + 1] = (r >>> 1) | (row(e, i) << 63);
+        }
+
+        // row below the tile
+        r = row(s, 0);
+        center[TILE_SIZE + 1] = r;
+        west[TILE_SIZE + 1] = (r << 1) | (row(sw, 0) >>> 63);
+        east[TILE_SIZE + 1] = (r >>> 1) | (row(se, 0) << 63);
+    }
+
+    /**
+     * Computes the next generation of a tile's rows from its neighbourhood rows.
+     *
+     * The 8 neighbours of all 64 cells of a row are summed up bit-sliced: s0 and s1 hold bit 0 and 1 of each
+     * cell's neighbour count, s2 is set for counts of 4 or more.
+     * @param west the west neighbours of each row, including the rows above and below the tile.
+     * @param center the rows, including the rows above and below the tile.
+     * @param east the east neighbours of each row, including the rows above and below the tile.
+     * @param out the next generation rows.
+     */
+    static void stepRows(long[] west, long[] center, long[] east, long[] out) {
+        for (int i = 0; i < TILE_SIZE; ++i) {
+            long self = center[i + 1];
+            long s0 = 0, s1 = 0, s2 = 0, c0, c1;
+
+            c0 = s0 & west[i];       s0 ^= west[i];       c1 = s1 & c0; s1 ^= c0; s2 |= c1;
+            c0 = s0 & center[i];     s0 ^= center[i];     c1 = s1 & c0; s1 ^= c0; s2 |= c1;
+            c0 = s0 & east[i];       s0 ^= east[i];       c1 = s1 & c0; s1 ^= c0; s2 |= c1;
+            c0 = s0 & west[i + 1];   s0 ^= west[i + 1];   c1 = s1 & c0; s1 ^= c0; s2 |= c1;
+            c0 = s0 & east[i + 1];   s0 ^= east[i + 1];   c1 = s1 & c0; s1 ^= c0; s2 |= c1;
+            c0 = s0 & west[i + 2];   s0 ^= west[i + 2];   c1 = s1 & c0; s1 ^= c0; s2 |= c1;
+            c0 = s0 & center[i + 2]; s0 ^= center[i + 2]; c1 = s1 & c0; s1 ^= c0; s2 |= c1;
+            c0 = s0 & east[i + 2];   s0 ^= east[i + 2];   c1 = s1 & c0; s1 ^= c0; s2 |= c1;
+
+            // alive with 3 neighbours, or with 2 neighbours if already alive
+            out[i] = s1 & ~s2 & (s0 | self);
+        }
+    }
+
+    /**
+     * Marks every tile and those of its neighbours that adjoin one of its live border cells as active.
+     */
+    private void activateAll() {
+        for (int slot = 0; slot < tiles.capacity(); ++slot) {
+            long tileKey = tiles.keyAt(slot);
+            if (tileKey == CellTable.EMPTY) {
+                continue;
+            }
+            int base = currentBase(tiles.valueAt(slot));
+            long any = 0;
+            for (int row = 0; row < TILE_SIZE; ++row) {
+                any |= pool[base + row];
+            }
+            long first = pool[base];
+            long last = pool[base + TILE_SIZE - 1];
+
+            int borders = CHANGED |
+                          (first != 0 ? NORTH : 0) | (last != 0 ? SOUTH : 0) |
+                          ((any & 1) != 0 ? WEST : 0) | (any < 0 ? EAST : 0) |
+                          ((first & 1) != 0 ? NORTH_WEST : 0) | (first < 0 ? NORTH_EAST : 0) |
+                          ((last & 1) != 0 ? SOUTH_WEST : 0) | (last < 0 ? SOUTH_EAST : 0);
+            activate(active, tileKey, borders);
+        }
+    }
+
+    /**
+     * Adds a tile and the neighbours affected by its changes to a set of active tiles.
+     * @param activeSet the set of active tiles.
+     * @param tileKey the tile coordinates.
+     * @param tileFlags the flags describing the tile's changes.
+     */
+    private static void activate(CellTable activeSet, long tileKey, int tileFlags) {
+        long tx = CellTable.x(tileKey);
+        long ty = CellTable.y(tileKey);
+        if ((tileFlags & (CHANGED | RECHECK)) != 0) activeSet.add(tileKey);
+        if ((tileFlags & NORTH) != 0) activeSet.add(CellTable.key(tx, ty - 1));
+        if ((tileFlags & SOUTH) != 0) activeSet.add(CellTable.key(tx, ty + 1));
+        if ((tileFlags & WEST) != 0) activeSet.add(CellTable.key(tx - 1, ty));
+        if ((tileFlags & EAST) != 0) activeSet.add(CellTable.key(tx + 1, ty));
+        if ((tileFlags & NORTH_WEST) != 0) activeSet.add(CellTable.key(tx - 1, ty - 1));
+        if ((tileFlags & NORTH_EAST) != 0) activeSet.add(CellTable.key(tx + 1, ty - 1));
+        if ((tileFlags & SOUTH_WEST) != 0) activeSet.add(CellTable.key(tx - 1, ty + 1));
+        if ((tileFlags & SOUTH_EAST) != 0) activeSet.add(CellTable.key(tx + 1, ty + 1));
+    }
+
+    /**
+     * Computes the next generation of an active tile into its other buffer and records the update.
+     * @param tileKey the tile coordinates.
+     */
+    private void updateTile(long tileKey) {
+        lookupNeighbourhood(CellTable.x(tileKey), CellTable.y(tileKey));
+        int tile = neighbourhood[0];
+
+        if (trackActivity) {
+            // neighbourhood equals the one two generations ago => the tile returns to its previous state
+            boolean period2 = true;
+            for (int i = 0; i < 9 && period2; ++i) {
+                period2 = period2(neighbourhood[i]);
+            }
+            if (period2) {
+                if (tile >= 0 && lastUpdate[tile] == generation - 1) {
+                    // flip buffers; the changes are the same as in the last update, just reversed
+                    int tileFlags = (flags[tile] & ALL_CHANGED) | PERIOD_2;
+                    updates.add(tileKey);
+                    updates.add(((long) tile << 32) | tileFlags);
+                }
+                // otherwise the tile did not change in the last generation and does not change now
+                return;
+            }
+        }
+
+        loadNeighbourhood();
+        kernel.step(west, center, east, out);
+
+        if (tile < 0) {
+            long any = 0;
+            for (int i = 0; i < TILE_SIZE; ++i) {
+                any |= out[i];
+            }
+            if (any == 0) {
+                return;
+            }
+            tile = allocateTile(tileKey);
+        }
+
+        int currentBase = currentBase(tile);
+        int otherBase = otherBase(tile);
+        // the state two generations ago is in the other buffer if the tile was updated in the last generation
+        int previousBase = (lastUpdate[tile] == generation - 1) ? otherBase : currentBase;
+        boolean history = (flags[tile] & NO_HISTORY) == 0;
+
+        long any = 0, diffs = 0, diffFirst = out[0] ^ pool[currentBase], diffLast = out[TILE_SIZE - 1] ^ pool[currentBase + TILE_SIZE - 1];
+        long anyCurrent = 0, anyPrevious = 0, diffsPrevious = 0;
+        for (int i = 0; i < TILE_SIZE; ++i) {
+            long current = pool[currentBase + i];
+            long previous = pool[previousBase + i];
+            any |= out[i];
+            anyCurrent |= current;
+            anyPrevious |= previous;
+            diffs |= out[i] ^ current;
+            diffsPrevious |= out[i] ^ previous;
+        }
+        System.arraycopy(out, 0, pool, otherBase, TILE_SIZE);
+
+        int tileFlags = (diffs != 0 ? CHANGED : 0) |
+                        (diffFirst != 0 ? NORTH : 0) | (diffLast != 0 ? SOUTH : 0) |
+                        ((diffs & 1) != 0 ? WEST : 0) | (diffs < 0 ? EAST : 0) |
+                        ((diffFirst & 1) != 0 ? NORTH_WEST : 0) | (diffFirst < 0 ? NORTH_EAST : 0) |
+                        ((diffLast & 1) != 0 ? SOUTH_WEST : 0) | (diffLast < 0 ? SOUTH_EAST : 0);
+        if (history && diffsPrevious == 0) {
+            tileFlags |= PERIOD_2;
+        }
+        if (any == 0) {
+            // a missing tile must have been empty for 3 generations, see period2()
+            tileFlags |= (history && anyCurrent == 0 && anyPrevious == 0) ? RELEASE : RECHECK;
+        }
+
+        updates.add(tileKey);
+        updates.add(((long) tile << 32) | tileFlags);
+    }
+
+    /**
+     * Advance the current generation.
+     */
+    public void oneGeneration() {
+        if (!trackActivity) {
+            active.clear();
+            activateAll();
+        }
+
+        // compute all active tiles from the current generation
+        updates.clear();
+        for (int slot = 0; slot < active.capacity(); ++slot) {
+            long tileKey = active.keyAt(slot);
+            if (tileKey != CellTable.EMPTY) {
+                updateTile(tileKey);
+            }
+        }
+
+        // apply the updates and collect the tiles to consider in the next generation
+        activeNext.clear();
+        for (int i = 0; i < updates.size(); i += 2) {
+            long tileKey = updates.get(i);
+            int tile = (int) (updates.get(i + 1) >>> 32);
+            int tileFlags = (int) updates.get(i + 1);
+
+            currentBuffer[tile] ^= 1;
+            lastUpdate[tile] = generation;
+            if ((tileFlags & RELEASE) != 0) {
+                releaseTile(tileKey, tile);
+                continue;
+            }
+            flags[tile] = tileFlags;
+            activate(activeNext, tileKey, tileFlags);
+        }
+
+        CellTable activeTmp = active;
+        active = activeNext;
+        activeNext = activeTmp;
+
+        ++generation;
+    }
+
+    /**
+     * Prints the usage message and exits.
+     */
+    private static void usage() {
+        System.err.format("Usage: java %s [-a] [-k scalar|vector] #generations <startfile >endfile%nCoordinates must lie within [-2147483646, 2147483646]; a run stops with an error before a cell can leave [-2147483647, 2147483647].%n", TileLife.class.getName());
+        System.exit(1);
+    }
+
+    /**
+     * main().
+     * @param args cmd line arguments
+     */
+    public static void main(String[] args) {
+        boolean trackActivity = false;
+        RowKernel kernel = bestKernel();
+
+        // parse options.
+        int argIdx = 0;
+        while (argIdx < args.length - 1 && args[argIdx].startsWith("-")) {
+            String option = args[argIdx++];
+            if (option.equals("-a")) {
+                trackActivity = true;
+            } else if (option.equals("-k") && args[argIdx].equals("scalar")) {
+                kernel = SCALAR_KERNEL;
+                ++argIdx;
+            } else if (option.equals("-k") && args[argIdx].equals("vector")) {
+                kernel = vectorKernel();
+                ++argIdx;
+                if (kernel == null) {
+                    System.err.println("vector kernel not available (requires --add-modules jdk.incubator.vector)");
+                    System.exit(1);
+                }
+            } else {
+                usage();
+            }
+        }
+
+        // arguments checking.
+        if (argIdx != args.length - 1) {
+            usage();
+        }
+
+        // parse nr of generations.
+        long generations = Long.parseLong(args[argIdx]);
+
+        TileLife life = new TileLife(trackActivity, kernel);
+
+        // read in initial generation.
+        life.readLife(System.in);
+
+        // advance generations.
+        for (long i = 0; i < generations; ++i) {
+            life.oneGeneration();
+        }
+
+        life.writeLife(new FileOutputStream(FileDescriptor.out).getChannel());
+        System.err.format("%d cells alive%n", life.countCells());
+    }
+}
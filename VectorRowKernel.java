@@ -0,0 +1,49 @@
+import static jdk.incubator.vector.VectorOperators.XOR;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A {@link RowKernel} using the vector API: the bit-sliced adders of {@link TileLife#stepRows} are applied to as many
+ * rows at once as fit into the preferred vector size (4 rows with AVX2, 8 rows with AVX-512).
+ *
+ * Requires the incubating module jdk.incubator.vector (--add-modules jdk.incubator.vector).
+ */
+public class VectorRowKernel implements RowKernel {
+
+    /**
+     * The vector shape used, the preferred one of the platform.
+     */
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+    /**
+     * Constructor.
+     * @throws UnsupportedOperationException if a vector does not hold more than one row or the lane count does not
+     *                                       divide the tile size (the scalar kernel should be used then).
+     */
+    public VectorRowKernel() {
+        if (SPECIES.length() < 2 || TileLife.TILE_SIZE % SPECIES.length() != 0) {
+            throw new UnsupportedOperationException("no suitable vector shape: " + SPECIES);
+        }
+    }
+
+    @Override
+    public void step(long[] west, long[] center, long[] east, long[] out) {
+        for (int i = 0; i < TileLife.TILE_SIZE; i += SPECIES.length()) {
+            LongVector self = LongVector.fromArray(SPECIES, center, i + 1);
+            LongVector s0 = LongVector.zero(SPECIES), s1 = s0, s2 = s0, c0, c1, n;
+
+            n = LongVector.fromArray(SPECIES, west, i);       c0 = s0.and(n); s0 = s0.lanewise(XOR, n); c1 = s1.and(c0); s1 = s1.lanewise(XOR, c0); s2 = s2.or(c1);
+            n = LongVector.fromArray(SPECIES, center, i);     c0 = s0.and(n); s0 = s0.lanewise(XOR, n); c1 = s1.and(c0); s1 = s1.lanewise(XOR, c0); s2 = s2.or(c1);
+            n = LongVector.fromArray(SPECIES, east, i);       c0 = s0.and(n); s0 = s0.lanewise(XOR, n); c1 = s1.and(c0); s1 = s1.lanewise(XOR, c0); s2 = s2.or(c1);
+            n = LongVector.fromArray(SPECIES, west, i + 1);   c0 = s0.and(n); s0 = s0.lanewise(XOR, n); c1 = s1.and(c0); s1 = s1.lanewise(XOR, c0); s2 = s2.or(c1);
+            n = LongVector.fromArray(SPECIES, east, i + 1);   c0 = s0.and(n); s0 = s0.lanewise(XOR, n); c1 = s1.and(c0); s1 = s1.lanewise(XOR, c0); s2 = s2.or(c1);
+            n = LongVector.fromArray(SPECIES, west, i + 2);   c0 = s0.and(n); s0 = s0.lanewise(XOR, n); c1 = s1.and(c0); s1 = s1.lanewise(XOR, c0); s2 = s2.or(c1);
+            n = LongVector.fromArray(SPECIES, center, i + 2); c0 = s0.and(n); s0 = s0.lanewise(XOR, n); c1 = s1.and(c0); s1 = s1.lanewise(XOR, c0); s2 = s2.or(c1);
+            n = LongVector.fromArray(SPECIES, east, i + 2);   c0 = s0.and(n); s0 = s0.lanewise(XOR, n); c1 = s1.and(c0); s1 = s1.lanewise(XOR, c0); s2 = s2.or(c1);
+
+            // alive with 3 neighbours, or with 2 neighbours if already alive
+            s1.and(s2.not()).and(s0.or(self)).intoArray(out, i);
+        }
+    }
+}
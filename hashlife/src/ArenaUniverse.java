@@ -0,0 +1,519 @@
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Hashlife universe keeping its nodes in parallel arrays instead of TreeNode objects.
+ *
+ * A node is an int id indexing the arrays of its four children, its level, population and memoized result. The tree
+ * bottoms out at level 3: a leaf holds 8x8 cells as a long bitboard (row y in byte y, cell x in bit x of its row),
+ * stored in the northWest (low half) and northEast (high half) slots, with -1 in the two others, which no child id
+ * can be. The hash-cons table maps the four slots to the id of the node (open addressing, linear probing), so a
+ * lookup allocates nothing, and the whole tree lives in a few large primitive arrays which the GC never needs to
+ * trace. Above the leaves the algorithms are the same as in TreeNode / Universe; ids are never freed.
+ */
+public class ArenaUniverse implements HashlifeUniverse {
+
+    private static final int INITIAL_CAPACITY = 1 << 16;
+
+    private static final int LEAF_LEVEL = 3;
+
+    // the value of the southWest / southEast slots of a leaf
+    private static final int LEAF = -1;
+
+    // the value of result for nodes without a memoized result, and of empty table slots; no node has id 0
+    private static final int NONE = 0;
+
+    private int[] northWest;
+    private int[] northEast;
+    private int[] southWest;
+    private int[] southEast;
+    private byte[] level;
+    private long[] population;
+    private int[] result;
+
+    // the next id
+    private int nodes = 1;
+
+    // the node ids by hash of their children, NONE for empty slots
+    private int[] table = new int[INITIAL_CAPACITY];
+    private int tableCount;
+
+    // the empty tree of each level, NONE if not created yet
+    private final int[] emptyTrees = new int[Byte.MAX_VALUE];
+
+    // the 32 rows of 32 cells stepped by the base case
+    private final int[] rows = new int[32];
+
+    private int root;
+    private double generationCount;
+
+    // half the side length covered by traverse, like TreeNode.size
+    private int size;
+
+    public ArenaUniverse() {
+        northWest = new int[INITIAL_CAPACITY];
+        northEast = new int[INITIAL_CAPACITY];
+        southWest = new int[INITIAL_CAPACITY];
+        southEast = new int[INITIAL_CAPACITY];
+        level = new byte[INITIAL_CAPACITY];
+        population = new long[INITIAL_CAPACITY];
+        result = new int[INITIAL_CAPACITY];
+        this.root = emptyTree(LEAF_LEVEL + 1);
+        this.size = 1 << (level[root] - 1);
+    }
+
+    /**
+     * Returns the id of the node with the given children, creating it if there is none yet.
+     */
+    private int node(int nw, int ne, int sw, int se) {
+        int id = find(nw, ne, sw, se);
+        if (id == NONE) {
+            id = insert(nw, ne, sw, se, (byte) (level[nw] + 1),
+                    population[nw] + population[ne] + population[sw] + population[se]);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the id of the leaf with the given cells, creating it if there is none yet.
+     */
+    private int leaf(long bits) {
+        int low = (int) bits, high = (int) (bits >>> 32);
+        int id = find(low, high, LEAF, LEAF);
+        if (id == NONE) {
+            id = insert(low, high, LEAF, LEAF, (byte) LEAF_LEVEL, Long.bitCount(bits));
+        }
+        return id;
+    }
+
+    private long bits(int leaf) {
+        return (northWest[leaf] & 0xFFFFFFFFL) | ((long) northEast[leaf] << 32);
+    }
+
+    private int find(int nw, int ne, int sw, int se) {
+        int mask = table.length - 1;
+        int slot = hash(nw, ne, sw, se) & mask;
+        int id;
+        while ((id = table[slot]) != NONE) {
+            if (northWest[id] == nw && northEast[id] == ne && southWest[id] == sw && southEast[id] == se) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NONE;
+    }
+
+    private int insert(int nw, int ne, int sw, int se, byte lvl, long pop) {
+        if (nodes == northWest.length) {
+            growNodes();
+        }
+        int id = nodes++;
+        northWest[id] = nw;
+        northEast[id] = ne;
+        southWest[id] = sw;
+        southEast[id] = se;
+        level[id] = lvl;
+        population[id] = pop;
+        int mask = table.length - 1;
+        int slot = hash(nw, ne, sw, se) & mask;
+        while (table[slot] != NONE) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = id;
+        if (++tableCount > table.length / 4 * 3) {
+            growTable();
+        }
+        return id;
+    }
+
+    /**
+     * Mixes the child ids (deterministic, unlike identity hash codes).
+     */
+    private static int hash(int nw, int ne, int sw, int se) {
+        long h = ((((long) nw * 0x9E3779B97F4A7C15L + ne) * 0x9E3779B97F4A7C15L + sw) * 0x9E3779B97F4A7C15L) + se;
+        h = (h ^ (h >>> 32)) * 0xFF51AFD7ED558CCDL;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private void growNodes() {
+        int capacity = northWest.length * 2;
+        northWest = Arrays.copyOf(northWest, capacity);
+        northEast = Arrays.copyOf(northEast, capacity);
+        southWest = Arrays.copyOf(southWest, capacity);
+        southEast = Arrays.copyOf(southEast, capacity);
+        level = Arrays.copyOf(level, capacity);
+        population = Arrays.copyOf(population, capacity);
+        result = Arrays.copyOf(result, capacity);
+    }
+
+    private void growTable() {
+        LifeEvents.TableResize event = new LifeEvents.TableResize();
+        event.begin();
+        int[] oldTable = table;
+        table = new int[oldTable.length * 2];
+        int mask = table.length - 1;
+        for (int id : oldTable) {
+            if (id != NONE) {
+                int slot = hash(northWest[id], northEast[id], southWest[id], southEast[id]) & mask;
+                while (table[slot] != NONE) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = id;
+            }
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.table = "ArenaUniverse.table";
+            event.entries = tableCount;
+            event.oldCapacity = oldTable.length;
+            event.newCapacity = table.length;
+            event.commit();
+        }
+    }
+
+    /**
+     * Returns the number of node ids in use, including the leaves.
+     */
+    public int getNodes() {
+        return nodes - 1;
+    }
+
+    private int emptyTree(int lvl) {
+        if (lvl == LEAF_LEVEL) {
+            return leaf(0);
+        }
+        if (emptyTrees[lvl] == NONE) {
+            int empty = emptyTree(lvl - 1);
+            emptyTrees[lvl] = node(empty, empty, empty, empty);
+        }
+        return emptyTrees[lvl];
+    }
+
+    // the index of cell (x, y) of a leaf, both in -4..3
+    private static int bitIndex(int x, int y) {
+        return (y + 4) * 8 + x + 4;
+    }
+
+    private int setBit(int id, int x, int y) {
+        if (level[id] == LEAF_LEVEL) {
+            return leaf(bits(id) | 1L << bitIndex(x, y));
+        }
+        int offset = 1 << (level[id] - 2);
+        if (x < 0) {
+            if (y < 0) {
+                return node(setBit(northWest[id], x + offset, y + offset), northEast[id], southWest[id], southEast[id]);
+            } else {
+                return node(northWest[id], northEast[id], setBit(southWest[id], x + offset, y - offset), southEast[id]);
+            }
+        } else {
+            if (y < 0) {
+                return node(northWest[id], setBit(northEast[id], x - offset, y + offset), southWest[id], southEast[id]);
+            } else {
+                return node(northWest[id], northEast[id], southWest[id], setBit(southEast[id], x - offset, y - offset));
+            }
+        }
+    }
+
+    private int getBit(int id, int x, int y) {
+        while (level[id] > LEAF_LEVEL) {
+            int offset = 1 << (level[id] - 2);
+            if (x < 0) {
+                x += offset;
+                if (y < 0) {
+                    y += offset;
+                    id = northWest[id];
+                } else {
+                    y -= offset;
+                    id = southWest[id];
+                }
+            } else {
+                x -= offset;
+                if (y < 0) {
+                    y += offset;
+                    id = northEast[id];
+                } else {
+                    y -= offset;
+                    id = southEast[id];
+                }
+            }
+        }
+        return (int) (bits(id) >>> bitIndex(x, y)) & 1;
+    }
+
+    private int expandUniverse(int id) {
+        size = 1 << (level[id] - 1);
+        int border = emptyTree(level[id] - 1);
+        return node(node(border, border, border, northWest[id]),
+                node(border, border, northEast[id], border),
+                node(border, southWest[id], border, border),
+                node(southEast[id], border, border, border));
+    }
+
+    private void expandToCover(int x, int y) {
+        while (true) {
+            int maxCoordinate = 1 << (level[root] - 1);
+            if (-maxCoordinate <= x && x <= maxCoordinate - 1 &&
+                -maxCoordinate <= y && y <= maxCoordinate - 1) {
+                break;
+            }
+            root = expandUniverse(root);
+        }
+    }
+
+    public void setBits(int[] coords, int count) {
+        if (count == 0) {
+            return;
+        }
+        int min = 0, max = 0;
+        for (int i = 0; i < 2 * count; ++i) {
+            min = Math.min(min, coords[i]);
+            max = Math.max(max, coords[i]);
+        }
+        expandToCover(min, min);
+        expandToCover(max, max);
+        for (int i = 0; i < 2 * count; i += 2) {
+            root = setBit(root, coords[i], coords[i + 1]);
+        }
+    }
+
+    /**
+     * Returns the next generation of a row, computed with bit-sliced adders over all
+     * columns at once; only the bits with valid neighbours on both sides are meaningful.
+     */
+    private static int nextRow(int above, int row, int below) {
+        // the neighbours above, below (two-bit sums) and beside (one-bit sum and carry)
+        int aboveWest = above << 1, aboveEast = above >>> 1;
+        int above0 = aboveWest ^ above ^ aboveEast;
+        int above1 = (aboveWest & above) | (aboveEast & (aboveWest ^ above));
+        int belowWest = below << 1, belowEast = below >>> 1;
+        int below0 = belowWest ^ below ^ belowEast;
+        int below1 = (belowWest & below) | (belowEast & (belowWest ^ below));
+        int beside0 = (row << 1) ^ (row >>> 1);
+        int beside1 = (row << 1) & (row >>> 1);
+
+        // the count is sum0 + 2 * (the number of set twos), 2 or 3 if exactly one of the twos is set
+        int sum0 = above0 ^ below0 ^ beside0;
+        int carry = (above0 & below0) | (beside0 & (above0 ^ below0));
+        int twos = above1 ^ below1 ^ beside1 ^ carry;
+        int manyTwos = (above1 & below1) | (beside1 & carry) | ((above1 ^ below1) & (beside1 ^ carry));
+        return twos & ~manyTwos & (sum0 | row);
+    }
+
+    /**
+     * The base case: returns the level 4 node in the center of a level 5 node, the given number of generations (at
+     * most 8) later. The 32x32 cells of its 16 leaves are loaded into rows, every generation loses the outermost row
+     * and column on each side.
+     */
+    private int stepLeaves(int id, int generations) {
+        Arrays.fill(rows, 0);
+        loadRows(northWest[id], 0, 0);
+        loadRows(northEast[id], 0, 16);
+        loadRows(southWest[id], 16, 0);
+        loadRows(southEast[id], 16, 16);
+        for (int g = 0; g < generations; g++) {
+            int above = rows[g];
+            for (int y = g + 1; y < 31 - g; y++) {
+                int row = rows[y];
+                rows[y] = nextRow(above, row, rows[y + 1]);
+                above = row;
+            }
+        }
+        return node(leaf(storeRows(8, 8)), leaf(storeRows(8, 16)), leaf(storeRows(16, 8)), leaf(storeRows(16, 16)));
+    }
+
+    // copies the cells of a level 4 node to the rows from y0 and the columns from x0
+    private void loadRows(int id, int y0, int x0) {
+        long nw = bits(northWest[id]), ne = bits(northEast[id]), sw = bits(southWest[id]), se = bits(southEast[id]);
+        for (int y = 0; y < 8; y++) {
+            rows[y0 + y] |= ((int) (nw >>> (8 * y)) & 0xFF | ((int) (ne >>> (8 * y)) & 0xFF) << 8) << x0;
+            rows[y0 + y + 8] |= ((int) (sw >>> (8 * y)) & 0xFF | ((int) (se >>> (8 * y)) & 0xFF) << 8) << x0;
+        }
+    }
+
+    // returns the cells of the 8x8 square of the rows from y0 and the columns from x0
+    private long storeRows(int y0, int x0) {
+        long bits = 0;
+        for (int y = 0; y < 8; y++) {
+            bits |= (long) ((rows[y0 + y] >>> x0) & 0xFF) << (8 * y);
+        }
+        return bits;
+    }
+
+    /**
+     * Returns the node in the center of the square of the four given nodes (northwest, northeast, southwest,
+     * southeast), of their level.
+     */
+    private int center(int nw, int ne, int sw, int se) {
+        return node(southEast[nw], southWest[ne], northEast[sw], northWest[se]);
+    }
+
+    private int centeredSubnode(int id) {
+        return center(northWest[id], northEast[id], southWest[id], southEast[id]);
+    }
+
+    private int centeredHorizontal(int west, int east) {
+        return center(northEast[west], northWest[east], southEast[west], southWest[east]);
+    }
+
+    private int centeredVertical(int north, int south) {
+        return center(southWest[north], southEast[north], northWest[south], northEast[south]);
+    }
+
+    private int centeredSubSubnode(int id) {
+        return center(southEast[northWest[id]], southWest[northEast[id]],
+                northEast[southWest[id]], northWest[southEast[id]]);
+    }
+
+    private int horizontalForward(int west, int east) {
+        return nextHashlifeGeneration(node(northEast[west], northWest[east], southEast[west], southWest[east]));
+    }
+
+    private int verticalForward(int north, int south) {
+        return nextHashlifeGeneration(node(southWest[north], southEast[north], northWest[south], northEast[south]));
+    }
+
+    private int centerForward(int id) {
+        return nextHashlifeGeneration(node(southEast[northWest[id]], southWest[northEast[id]],
+                northEast[southWest[id]], northWest[southEast[id]]));
+    }
+
+    private int nextGeneration(int id) {
+        if (result[id] != NONE) {
+            return result[id];
+        }
+        if (population[id] == 0) {
+            return northWest[id];
+        }
+        int next;
+        if (level[id] == LEAF_LEVEL + 2) {
+            next = stepLeaves(id, 1);
+        } else {
+            int n00 = centeredSubnode(northWest[id]),
+                n01 = centeredHorizontal(northWest[id], northEast[id]),
+                n02 = centeredSubnode(northEast[id]),
+                n10 = centeredVertical(northWest[id], southWest[id]),
+                n11 = centeredSubSubnode(id),
+                n12 = centeredVertical(northEast[id], southEast[id]),
+                n20 = centeredSubnode(southWest[id]),
+                n21 = centeredHorizontal(southWest[id], southEast[id]),
+                n22 = centeredSubnode(southEast[id]);
+
+            next = node(nextGeneration(node(n00, n01, n10, n11)),
+                    nextGeneration(node(n01, n02, n11, n12)),
+                    nextGeneration(node(n10, n11, n20, n21)),
+                    nextGeneration(node(n11, n12, n21, n22)));
+        }
+        // node() may replace the arrays, so the result is stored only after it is complete
+        result[id] = next;
+        return next;
+    }
+
+    private int nextHashlifeGeneration(int id) {
+        if (result[id] != NONE) {
+            return result[id];
+        }
+        if (population[id] == 0) {
+            return northWest[id];
+        }
+        int next;
+        if (level[id] == LEAF_LEVEL + 2) {
+            next = stepLeaves(id, 8);
+        } else {
+            int n00 = nextHashlifeGeneration(northWest[id]),
+                n01 = horizontalForward(northWest[id], northEast[id]),
+                n02 = nextHashlifeGeneration(northEast[id]),
+                n10 = verticalForward(northWest[id], southWest[id]),
+                n11 = centerForward(id),
+                n12 = verticalForward(northEast[id], southEast[id]),
+                n20 = nextHashlifeGeneration(southWest[id]),
+                n21 = horizontalForward(southWest[id], southEast[id]),
+                n22 = nextHashlifeGeneration(southEast[id]);
+
+            next = node(nextHashlifeGeneration(node(n00, n01, n10, n11)),
+                    nextHashlifeGeneration(node(n01, n02, n11, n12)),
+                    nextHashlifeGeneration(node(n10, n11, n20, n21)),
+                    nextHashlifeGeneration(node(n11, n12, n21, n22)));
+        }
+        result[id] = next;
+        return next;
+    }
+
+    // expands the root until the pattern lies within its central quarter (of each quadrant), see Universe.runStep;
+    // below level 6 the sub-subnodes compared would be parts of leaves
+    private void expandForStep() {
+        while (level[root] < LEAF_LEVEL + 3 ||
+                population[northWest[root]] != population[southEast[southEast[northWest[root]]]] ||
+                population[northEast[root]] != population[southWest[southWest[northEast[root]]]] ||
+                population[southWest[root]] != population[northEast[northEast[southWest[root]]]] ||
+                population[southEast[root]] != population[northWest[northWest[southEast[root]]]]) {
+            root = expandUniverse(root);
+        }
+    }
+
+    public void runStep() {
+        LifeEvents.Step event = new LifeEvents.Step();
+        event.begin();
+        expandForStep();
+        root = nextGeneration(root);
+        generationCount++;
+        commitStep(event, 1);
+    }
+
+    public void runHashlifeStep() {
+        LifeEvents.Step event = new LifeEvents.Step();
+        event.begin();
+        expandForStep();
+        long stepSize = 1L << (level[root] - 2);
+        root = nextHashlifeGeneration(root);
+        generationCount += stepSize;
+        commitStep(event, stepSize);
+    }
+
+    private void commitStep(LifeEvents.Step event, long stepSize) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.generation = (long) generationCount;
+            event.stepSize = stepSize;
+            event.population = population[root];
+            event.level = level[root];
+            event.nodes = getNodes();
+            event.commit();
+        }
+    }
+
+    public double getPopulation() {
+        return population[root];
+    }
+
+    public void traverse() {
+        LifeEvents.Write event = new LifeEvents.Write();
+        event.begin();
+        long[] cells = new long[(int) population[root]];
+        int count = 0;
+        for (int x = -size; x < size; x++) {
+            for (int y = -size; y < size; y++) {
+                if (getBit(root, x, y) == 1) {
+                    cells[count++] = CellTable.key(x, y);
+                }
+            }
+        }
+        try {
+            SortedCellWriter.write(cells, count, new FileOutputStream(FileDescriptor.out).getChannel());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.cells = count;
+            event.commit();
+        }
+    }
+
+    public String toString() {
+        return "Generation: " + generationCount + "\n" +
+                "Population: " + population[root];
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * The operations of a hashlife universe used by Life: the ArenaUniverse keeping its nodes in parallel arrays (the
+ * default), or the TreeNode based Universe.
+ */
+public interface HashlifeUniverse {
+
+    /**
+     * Sets multiple bits, expanding the universe up front to cover all of them.
+     * @param coords the coordinates as interleaved (x, y) pairs.
+     * @param count the number of pairs.
+     */
+    void setBits(int[] coords, int count);
+
+    /**
+     * Advances the universe by one generation.
+     */
+    void runStep();
+
+    /**
+     * Advances the universe by 2^(level-2) generations, the level of the root after expanding it.
+     */
+    void runHashlifeStep();
+
+    double getPopulation();
+
+    /**
+     * Writes the live cells as "x y" lines to stdout, in sort(1) order (see SortedCellWriter).
+     */
+    void traverse();
+}
@@ -1,37 +1,121 @@
+import java.io.IOException;
 import java.io.InputStream;
-import java.util.Scanner;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.file.Paths;
 
 public class Life {
 
-    private static Universe universe = new Universe();
+    private static HashlifeUniverse universe;
 
-    public void readLife(InputStream inStream) {
-        Scanner scanner = new Scanner(inStream);
+    // coordinates are passed to the universe in batches of interleaved (x, y) pairs
+    private static final int BATCH_SIZE = 4096;
 
-        // TODO: skip headers (see grammar in readlife.y)
+    // the number of generations kept by the metrics recorded by option -r
+    private static final int METRICS_CAPACITY = 1 << 16;
 
-        while (scanner.hasNextLine()) {
-            int x = scanner.nextInt();
-            int y = scanner.nextInt();
+    private final int[] batch = new int[2 * BATCH_SIZE];
 
-            universe.setBit(x, y);
+    /**
+     * Reads the cells ("x y" lines), see CellReader.
+     */
+    public void readLife(InputStream inStream) {
+        LifeEvents.Read event = new LifeEvents.Read();
+        event.begin();
+        try {
+            new CellReader(Channels.newChannel(inStream), 64 * 1024, BATCH_SIZE).readCells(this::addCells);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.cells = (long) universe.getPopulation();
+            event.commit();
+        }
+    }
 
-            scanner.nextLine();
+    private void addCells(long[] keys, int count) {
+        for (int i = 0; i < count; ++i) {
+            batch[2 * i] = (int) CellTable.x(keys[i]);
+            batch[2 * i + 1] = (int) CellTable.y(keys[i]);
         }
+        universe.setBits(batch, count);
     }
 
     public void writeLife() {
 
     }
 
+    private static void usage() {
+        System.err.format("Usage: java %s [-e arena|objects] [-r metricsfile] [-n maxnodes] [-m maxheapfraction] [-k on|off] #generations <startfile >endfile%n", Life.class.getName());
+        System.err.format("       (arena is the default engine; -r, -n and -m require -e objects)%n");
+        System.exit(1);
+    }
+
     public static void main(String[] args) {
+        String metricsFile = null;
+        int maxNodes = 0;
+        double maxHeapFraction = 0;
+        boolean keepRecentResults = true;
+        boolean arena = true;
+
+        // parse options.
+        int argIdx = 0;
+        while (argIdx < args.length - 1 && args[argIdx].startsWith("-")) {
+            String option = args[argIdx++];
+            String value = args[argIdx++];
+            switch (option) {
+                case "-e":
+                    if (!value.equals("objects") && !value.equals("arena")) {
+                        usage();
+                    }
+                    arena = value.equals("arena");
+                    break;
+                case "-r":
+                    metricsFile = value;
+                    break;
+                case "-n":
+                    maxNodes = Integer.parseInt(value);
+                    break;
+                case "-m":
+                    maxHeapFraction = Double.parseDouble(value);
+                    break;
+                case "-k":
+                    if (!value.equals("on") && !value.equals("off")) {
+                        usage();
+                    }
+                    keepRecentResults = value.equals("on");
+                    break;
+                default:
+                    usage();
+            }
+        }
+
         // arguments checking.
-        if (args.length != 1) {
-            System.err.format("Usage: java %s #generations <startfile | sort >endfile%n", Life.class.getName());
+        if (argIdx != args.length - 1 || maxNodes < 0 || maxHeapFraction < 0 || maxHeapFraction > 1) {
+            usage();
+        }
+        // metrics and node limits are only supported by the TreeNode based universe.
+        if (arena && (metricsFile != null || maxNodes > 0 || maxHeapFraction > 0)) {
+            usage();
         }
 
         // parse nr of generations.
-        int generations = Integer.parseInt(args[0]);
+        int generations = Integer.parseInt(args[argIdx]);
+
+        GenerationMetrics metrics = null;
+        Universe objects = null;
+        if (arena) {
+            universe = new ArenaUniverse();
+        } else {
+            objects = new Universe();
+            if (metricsFile != null) {
+                metrics = new GenerationMetrics(METRICS_CAPACITY, GenerationMetrics.HASHLIFE_COLUMNS);
+                objects.setMetrics(metrics);
+            }
+            objects.setNodeLimit(maxNodes, maxHeapFraction, keepRecentResults);
+            universe = objects;
+        }
 
         Life life = new Life();
 
@@ -43,7 +127,13 @@ public class Life {
         }
 
         System.err.println(universe.getPopulation() + " cells alive");
+        if (objects != null && objects.getCollections() > 0) {
+            System.err.println(objects.getCollections() + " node collections");
+        }
         universe.traverse();
+        if (metrics != null) {
+            metrics.writeCsv(Paths.get(metricsFile));
+        }
     }
 
 }
@@ -0,0 +1,184 @@
+/**
+ * Hash-cons table of the canonical tree nodes.
+ *
+ * Nodes are looked up by their four children (compared by reference, as the children are canonical themselves)
+ * before anything is allocated, so a hit costs no garbage; only a miss creates the node. The table is an array of
+ * node references probed linearly, doubled when it is 3/4 full. The two leaves are kept apart.
+ *
+ * The table only grows while nodes are created; {@link #collect(TreeNode, boolean)} drops the nodes no longer
+ * reachable from the root, so a long run fits into a fixed heap.
+ */
+public class NodeTable {
+
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    private TreeNode[] nodes = new TreeNode[INITIAL_CAPACITY];
+
+    // the number of inner nodes in the table
+    private int count;
+
+    private final TreeNode[] leaves = new TreeNode[2];
+
+    /**
+     * Returns the canonical leaf.
+     *
+     * @param alive Indicates whether the leaf represents an alive or a dead cell
+     */
+    public TreeNode leaf(boolean alive) {
+        int idx = alive ? 1 : 0;
+        if (leaves[idx] == null) {
+            leaves[idx] = new TreeNode(alive);
+        }
+        return leaves[idx];
+    }
+
+    /**
+     * Returns the canonical node with the given children, creating it if there is none yet.
+     */
+    public TreeNode node(TreeNode northWest, TreeNode northEast, TreeNode southWest, TreeNode southEast) {
+        int slot = find(northWest, northEast, southWest, southEast);
+        TreeNode node = nodes[slot];
+        if (node == null) {
+            node = new TreeNode(northWest, northEast, southWest, southEast);
+            insert(slot, node);
+        }
+        return node;
+    }
+
+    /**
+     * Returns the canonical node equal to the given one, making the given one canonical if there is none yet.
+     */
+    public TreeNode intern(TreeNode node) {
+        if (node.level == 0) {
+            int idx = node.alive ? 1 : 0;
+            if (leaves[idx] == null) {
+                leaves[idx] = node;
+            }
+            return leaves[idx];
+        }
+        int slot = find(node.northWest, node.northEast, node.southWest, node.southEast);
+        if (nodes[slot] != null) {
+            return nodes[slot];
+        }
+        insert(slot, node);
+        return node;
+    }
+
+    /**
+     * Rebuilds the table from the nodes reachable from the root, leaving all others to the garbage collector. The
+     * memoized results of the nodes kept are dropped, except for those computed or found since the last collection
+     * if keepRecentResults is set (they are kept with their own subtrees).
+     *
+     * @return the number of nodes dropped
+     */
+    public int collect(TreeNode root, boolean keepRecentResults) {
+        int before = size();
+        nodes = new TreeNode[nodes.length];
+        count = 0;
+        mark(root, keepRecentResults);
+        return before - size();
+    }
+
+    private void mark(TreeNode node, boolean keepRecentResults) {
+        if (node.level == 0) {
+            return;
+        }
+        int slot = find(node.northWest, node.northEast, node.southWest, node.southEast);
+        if (nodes[slot] != null) {
+            return;
+        }
+        insert(slot, node);
+        mark(node.northWest, keepRecentResults);
+        mark(node.northEast, keepRecentResults);
+        mark(node.southWest, keepRecentResults);
+        mark(node.southEast, keepRecentResults);
+        if (node.result != null) {
+            if (keepRecentResults && node.resultUsed) {
+                mark(node.result, true);
+            } else {
+                node.result = null;
+            }
+        }
+        node.resultUsed = false;
+    }
+
+    /**
+     * Returns the number of canonical nodes, including the leaves.
+     */
+    public int size() {
+        return count + (leaves[0] != null ? 1 : 0) + (leaves[1] != null ? 1 : 0);
+    }
+
+    /**
+     * Returns the number of slots of the table.
+     */
+    public int capacity() {
+        return nodes.length;
+    }
+
+    /**
+     * Finds the slot holding the node with the given children, or the empty slot where it belongs.
+     */
+    private int find(TreeNode northWest, TreeNode northEast, TreeNode southWest, TreeNode southEast) {
+        int mask = nodes.length - 1;
+        int slot = hash(northWest, northEast, southWest, southEast) & mask;
+        TreeNode node;
+        while ((node = nodes[slot]) != null) {
+            if (node.northWest == northWest && node.northEast == northEast &&
+                    node.southWest == southWest && node.southEast == southEast) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void insert(int slot, TreeNode node) {
+        nodes[slot] = node;
+        if (++count > nodes.length / 4 * 3) {
+            grow();
+        }
+    }
+
+    /**
+     * Returns the structural hash of a node with the given children, combining the hashes the children cached at
+     * construction. It depends only on the pattern, not on the objects, so the layout of the table is the same in
+     * every run. The low bits select the slot, so the combination is mixed by the MurmurHash3 finalizer.
+     */
+    static int hash(TreeNode northWest, TreeNode northEast, TreeNode southWest, TreeNode southEast) {
+        int h = northWest.hash;
+        h = h * 31 + northEast.hash;
+        h = h * 31 + southWest.hash;
+        h = h * 31 + southEast.hash;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        return h ^ (h >>> 16);
+    }
+
+    private void grow() {
+        LifeEvents.TableResize event = new LifeEvents.TableResize();
+        event.begin();
+        TreeNode[] oldNodes = nodes;
+        nodes = new TreeNode[oldNodes.length * 2];
+        int mask = nodes.length - 1;
+        for (TreeNode node : oldNodes) {
+            if (node != null) {
+                int slot = node.hash & mask;
+                while (nodes[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                nodes[slot] = node;
+            }
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.table = "TreeNode.canonicals";
+            event.entries = size();
+            event.oldCapacity = oldNodes.length;
+            event.newCapacity = nodes.length;
+            event.commit();
+        }
+    }
+}
@@ -1,5 +1,3 @@
-import java.util.HashMap;
-
 /**
  * Represents a node in a quadtree.
  */
@@ -10,16 +8,33 @@ public class TreeNode {
     protected final TreeNode southWest;
     protected final TreeNode southEast;
 
-    protected final int level;
+    // a byte, so that the hash below fits into the same object size
+    protected final byte level;
     protected final boolean alive;
     protected final double population;
 
-    protected static HashMap<TreeNode, TreeNode> canonicals = new HashMap<TreeNode, TreeNode>();
+    // structural hash, derived from the hashes of the children, see NodeTable.hash
+    protected final int hash;
+
+    protected static NodeTable canonicals = new NodeTable();
 
     protected TreeNode result;
 
+    // true if the result was computed or found in the memo since the last NodeTable.collect
+    protected boolean resultUsed;
+
     static int size = 0;
 
+    // the hashes of the dead and the alive leaf
+    static final int DEAD_HASH = 0x2F0B3C61;
+    static final int ALIVE_HASH = 0x6A09E667;
+
+    // results found in / missing from the memo of nextGeneration and nextHashlifeGeneration, only counted while
+    // countMemo is set (by Universe, while recording metrics or memo events)
+    static boolean countMemo = false;
+    static long memoHits = 0;
+    static long memoMisses = 0;
+
     public static int getSize() {
         return size;
     }
@@ -38,6 +53,7 @@ public class TreeNode {
         this.level = 0;
         this.alive = alive;
         this.population = alive ? 1 : 0;
+        this.hash = alive ? ALIVE_HASH : DEAD_HASH;
     }
 
     /**
@@ -55,23 +71,24 @@ public class TreeNode {
         this.southWest = southWest;
         this.southEast = southEast;
 
-        this.level = northWest.level + 1;
+        this.level = (byte) (northWest.level + 1);
         this.population = northWest.population + northEast.population +
                           southWest.population + southEast.population;
 
         this.alive = this.population > 0;
+        this.hash = NodeTable.hash(northWest, northEast, southWest, southEast);
     }
 
     public TreeNode create(boolean alive) {
-        return new TreeNode(alive).getCanonical();
+        return canonicals.leaf(alive);
     }
 
     public TreeNode create(TreeNode northWest, TreeNode northEast, TreeNode southWest, TreeNode southEast) {
-        return new TreeNode(northWest, northEast, southWest, southEast).getCanonical();
+        return canonicals.node(northWest, northEast, southWest, southEast);
     }
 
     public static TreeNode createRoot() {
-        return new TreeNode(false).createEmptyTree(3);
+        return canonicals.leaf(false).createEmptyTree(3);
     }
 
     public TreeNode setBit(int x, int y) {
@@ -142,34 +159,39 @@ public class TreeNode {
                             create(this.southEast, border, border, border));
     }
 
-    public TreeNode oneGeneration(int bitmask) {
-        if (bitmask == 0) return create(false);
-        int self = (bitmask >> 5) & 1;
-        int neighbourCount = 0;
+    // the next generation of the center 2x2 cells of every 4x4 square (bit 15 - (4 * y + x) for the cell at x, y),
+    // as bits 3 (northwest) to 0 (southeast)
+    private static final byte[] NEXT_CENTER = new byte[1 << 16];
 
-        bitmask &= 0x757;
-        while (bitmask != 0) {
-            bitmask &= bitmask - 1;
-            neighbourCount++;
+    static {
+        for (int square = 0; square < NEXT_CENTER.length; square++) {
+            NEXT_CENTER[square] = (byte) (oneGeneration(square >> 5) << 3 | oneGeneration(square >> 4) << 2 |
+                    oneGeneration(square >> 1) << 1 | oneGeneration(square));
         }
+    }
 
-        if (neighbourCount == 3 || (neighbourCount == 2 && self != 0)) {
-            return create(true);
-        } else {
-            return create(false);
-        }
+    // the next state of the cell at bit 5 of a 3x3 neighbourhood (bits 0-2, 4-6, 8-10)
+    private static int oneGeneration(int bitmask) {
+        int self = (bitmask >> 5) & 1;
+        int neighbourCount = Integer.bitCount(bitmask & 0x757);
+        return neighbourCount == 3 || (neighbourCount == 2 && self != 0) ? 1 : 0;
     }
 
-    public TreeNode slowSimulation() {
-        int allbits = 0;
-        for (int y=-2;y<2;y++) {
-            for (int x=-2;x<2;x++) {
-                allbits = (allbits << 1) + this.getBit(x, y);
-            }
-        }
+    // the cells of a level 1 node, laid out like the 4x4 squares of NEXT_CENTER
+    private static int squareBits(TreeNode node) {
+        return (node.northWest.alive ? 1 << 5 : 0) | (node.northEast.alive ? 1 << 4 : 0) |
+                (node.southWest.alive ? 1 << 1 : 0) | (node.southEast.alive ? 1 : 0);
+    }
 
-        return create(this.oneGeneration(allbits >> 5), oneGeneration(allbits >> 4),
-                            this.oneGeneration(allbits >> 1), oneGeneration(allbits));
+    /**
+     * The base case of a level 2 node: looks its 4x4 cells, read from the level 1 children, up in NEXT_CENTER.
+     */
+    public TreeNode slowSimulation() {
+        int square = squareBits(this.northWest) << 10 | squareBits(this.northEast) << 8 |
+                squareBits(this.southWest) << 2 | squareBits(this.southEast);
+        int next = NEXT_CENTER[square];
+        return create(create((next & 8) != 0), create((next & 4) != 0),
+                create((next & 2) != 0), create((next & 1) != 0));
     }
 
     public TreeNode centeredSubnode() {
@@ -205,8 +227,13 @@ public class TreeNode {
     }
 
     public TreeNode nextGeneration() {
-        if (this.result != null) return this.result;
+        if (this.result != null) {
+            if (countMemo) memoHits++;
+            this.resultUsed = true;
+            return this.result;
+        }
         if (this.population == 0) return this.northWest;
+        if (countMemo) memoMisses++;
         if (this.level == 2) return this.slowSimulation();
 
         TreeNode n00 = this.northWest.centeredSubnode(),
@@ -223,13 +250,19 @@ public class TreeNode {
                       create(n01, n02, n11, n12).nextGeneration(),
                       create(n10, n11, n20, n21).nextGeneration(),
                       create(n11, n12, n21, n22).nextGeneration());
+        this.resultUsed = true;
 
         return this.result;
     }
 
     public TreeNode nextHashlifeGeneration() {
-        if (this.result != null) return this.result;
+        if (this.result != null) {
+            if (countMemo) memoHits++;
+            this.resultUsed = true;
+            return this.result;
+        }
         if (this.population == 0) return this.northWest;
+        if (countMemo) memoMisses++;
         if (this.level == 2) return this.slowSimulation();
 
         TreeNode n00 = this.northWest.nextHashlifeGeneration(),
@@ -246,31 +279,24 @@ public class TreeNode {
                       create(n01, n02, n11, n12).nextHashlifeGeneration(),
                       create(n10, n11, n20, n21).nextHashlifeGeneration(),
                       create(n11, n12, n21, n22).nextHashlifeGeneration());
+        this.resultUsed = true;
 
         return this.result;
     }
 
     public TreeNode getCanonical() {
-        TreeNode canonical = canonicals.get(this);
-        if (canonical != null) {
-            return canonical;
-        }
-
-        canonicals.put(this, this);
-        return this;
+        return canonicals.intern(this);
     }
 
     public int hashCode() {
-        if (level == 0) return (int) this.population;
-        return System.identityHashCode(this.northWest) +
-                11 * System.identityHashCode(this.northEast) +
-                101 * System.identityHashCode(this.southWest) +
-                1007 * System.identityHashCode(this.southEast);
+        return this.hash;
     }
 
     public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TreeNode)) return false;
         TreeNode that = (TreeNode) o;
-        if (this.level != that.level) return false;
+        if (this.hash != that.hash || this.level != that.level) return false;
         if (this.level == 0) return this.alive == that.alive;
         return this.northWest == that.northWest &&
                 this.northEast == that.northEast &&
@@ -1,14 +1,39 @@
-public class Universe {
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+public class Universe implements HashlifeUniverse {
 
     private double generationCount;
     private TreeNode root;
+    private GenerationMetrics metrics;
+    private long startHits;
+    private long startMisses;
+
+    // memory-bounded mode, see setNodeLimit: the max. number of canonical nodes (0 = unlimited), the max. fraction
+    // of the heap in use, and whether memoized results used since the last collection survive it
+    private int maxNodes;
+    private double maxHeapFraction;
+    private boolean keepRecentResults;
+    private int nodesAfterCollection;
+    private int collections;
 
     public Universe() {
+        // the canonical nodes, their memoized results and the size are static: start from scratch, so a new universe
+        // does not profit from the results of a previous one (only one universe is in use at a time)
+        TreeNode.canonicals = new NodeTable();
+        TreeNode.size = 0;
         this.generationCount = 0;
         this.root = TreeNode.createRoot();
     }
 
     public void setBit(int x, int y) {
+        expandToCover(x, y);
+        root = root.setBit(x, y);
+    }
+
+    private void expandToCover(int x, int y) {
         while (true) {
             int maxCoordinate = 1 << (this.root.level - 1);
             if (-maxCoordinate <= x && x <= maxCoordinate - 1 &&
@@ -17,11 +42,89 @@ public class Universe {
             }
             root = root.expandUniverse();
         }
+    }
 
-        root = root.setBit(x, y);
+    /**
+     * Sets multiple bits, expanding the universe up front to cover all of them.
+     * @param coords the coordinates as interleaved (x, y) pairs.
+     * @param count the number of pairs.
+     */
+    public void setBits(int[] coords, int count) {
+        if (count == 0) {
+            return;
+        }
+        int min = 0, max = 0;
+        for (int i = 0; i < 2 * count; ++i) {
+            min = Math.min(min, coords[i]);
+            max = Math.max(max, coords[i]);
+        }
+        expandToCover(min, min);
+        expandToCover(max, max);
+        for (int i = 0; i < 2 * count; i += 2) {
+            root = root.setBit(coords[i], coords[i + 1]);
+        }
+    }
+
+    /**
+     * Starts or stops recording metrics for every step.
+     * @param metrics the metrics receiving the values of GenerationMetrics.HASHLIFE_COLUMNS, null to stop recording.
+     */
+    public void setMetrics(GenerationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Bounds the memory used by the canonical nodes: after a step, the nodes no longer reachable from the root are
+     * dropped if there are more than maxNodes, or if more than maxHeapFraction of the max. heap is in use (and the
+     * node count has at least doubled since the last collection, as the heap in use only shrinks after the next GC).
+     * @param maxNodes the max. number of canonical nodes, 0 for no limit.
+     * @param maxHeapFraction the max. fraction of the heap in use, 0 for no limit.
+     * @param keepRecentResults true to keep the memoized results computed or used since the last collection.
+     */
+    public void setNodeLimit(int maxNodes, double maxHeapFraction, boolean keepRecentResults) {
+        this.maxNodes = maxNodes;
+        this.maxHeapFraction = maxHeapFraction;
+        this.keepRecentResults = keepRecentResults;
+    }
+
+    /**
+     * Returns the number of node collections so far.
+     */
+    public int getCollections() {
+        return collections;
+    }
+
+    /**
+     * Drops the canonical nodes no longer reachable from the root if one of the limits set by setNodeLimit is
+     * exceeded.
+     */
+    private void collectIfNeeded() {
+        int nodes = TreeNode.canonicals.size();
+        boolean collect = maxNodes > 0 && nodes > maxNodes;
+        if (!collect && maxHeapFraction > 0 && nodes >= 2 * nodesAfterCollection) {
+            Runtime runtime = Runtime.getRuntime();
+            collect = runtime.totalMemory() - runtime.freeMemory() > maxHeapFraction * runtime.maxMemory();
+        }
+        if (!collect) {
+            return;
+        }
+        LifeEvents.NodeCollection event = new LifeEvents.NodeCollection();
+        event.begin();
+        TreeNode.canonicals.collect(this.root, keepRecentResults);
+        nodesAfterCollection = TreeNode.canonicals.size();
+        collections++;
+        event.end();
+        if (event.shouldCommit()) {
+            event.nodesBefore = nodes;
+            event.nodesAfter = nodesAfterCollection;
+            event.commit();
+        }
     }
 
     public void runStep() {
+        LifeEvents.Step event = new LifeEvents.Step();
+        event.begin();
+        TreeNode previous = startStep();
         while (this.root.level < 3 ||
                 this.root.northWest.population != this.root.northWest.southEast.southEast.population ||
                 this.root.northEast.population != this.root.northEast.southWest.southWest.population ||
@@ -32,9 +135,15 @@ public class Universe {
 
         this.root = root.nextGeneration();
         this.generationCount++;
+        endStep(previous);
+        commitStep(event, 1);
+        collectIfNeeded();
     }
 
     public void runHashlifeStep() {
+        LifeEvents.Step event = new LifeEvents.Step();
+        event.begin();
+        TreeNode previous = startStep();
         while (this.root.level < 3 ||
                 this.root.northWest.population != this.root.northWest.southEast.southEast.population ||
                 this.root.northEast.population != this.root.northEast.southWest.southWest.population ||
@@ -47,6 +156,156 @@ public class Universe {
         System.out.println("stepSize: " + stepSize);
         this.root = this.root.nextHashlifeGeneration();
         this.generationCount += stepSize;
+        endStep(previous);
+        commitStep(event, (long) stepSize);
+        collectIfNeeded();
+    }
+
+    /**
+     * Starts recording a step if metrics are enabled, counting memo hits / misses only if metrics or the memo
+     * flight recorder event are enabled.
+     * @return the root before the step, null if not recording.
+     */
+    private TreeNode startStep() {
+        TreeNode.countMemo = metrics != null || new LifeEvents.Memo().isEnabled();
+        startHits = TreeNode.memoHits;
+        startMisses = TreeNode.memoMisses;
+        if (metrics == null) {
+            return null;
+        }
+        metrics.startStep((long) this.generationCount);
+        return this.root;
+    }
+
+    /**
+     * Finishes recording a step: population, births and deaths (by comparing the trees before and after the step),
+     * bounding box, node count and memo statistics.
+     * @param previous the root before the step, null if not recording.
+     */
+    private void endStep(TreeNode previous) {
+        if (previous == null) {
+            return;
+        }
+        metrics.endStep();
+        // the step size of runHashlifeStep is only known afterwards
+        metrics.set(GenerationMetrics.Column.GENERATION, (long) this.generationCount);
+        long[] changes = new long[2];
+        TreeNode before = previous, after = this.root;
+        while (before.level < after.level) {
+            before = expandDetached(before);
+        }
+        while (after.level < before.level) {
+            after = expandDetached(after);
+        }
+        countChanges(before, after, changes);
+        metrics.set(GenerationMetrics.Column.POPULATION, (long) this.root.population);
+        metrics.set(GenerationMetrics.Column.BIRTHS, changes[0]);
+        metrics.set(GenerationMetrics.Column.DEATHS, changes[1]);
+        if (this.root.population > 0) {
+            long origin = -(1L << (this.root.level - 1));
+            metrics.set(GenerationMetrics.Column.MIN_X, minCoordinate(this.root, origin, false, Long.MAX_VALUE));
+            metrics.set(GenerationMetrics.Column.MIN_Y, minCoordinate(this.root, origin, true, Long.MAX_VALUE));
+            metrics.set(GenerationMetrics.Column.MAX_X, maxCoordinate(this.root, origin, false, Long.MIN_VALUE));
+            metrics.set(GenerationMetrics.Column.MAX_Y, maxCoordinate(this.root, origin, true, Long.MIN_VALUE));
+        }
+        metrics.set(GenerationMetrics.Column.NODES, TreeNode.canonicals.size());
+        metrics.set(GenerationMetrics.Column.MEMO_HITS, TreeNode.memoHits - startHits);
+        metrics.set(GenerationMetrics.Column.MEMO_MISSES, TreeNode.memoMisses - startMisses);
+    }
+
+    /**
+     * Commits the flight recorder events of a step, if enabled.
+     * @param event the step event, begun before the step.
+     * @param stepSize the number of generations advanced.
+     */
+    private void commitStep(LifeEvents.Step event, long stepSize) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.generation = (long) this.generationCount;
+            event.stepSize = stepSize;
+            event.population = (long) this.root.population;
+            event.level = this.root.level;
+            event.nodes = TreeNode.canonicals.size();
+            event.commit();
+        }
+        LifeEvents.Memo memo = new LifeEvents.Memo();
+        if (TreeNode.countMemo && memo.shouldCommit()) {
+            memo.level = this.root.level + 1;
+            memo.hits = TreeNode.memoHits - startHits;
+            memo.misses = TreeNode.memoMisses - startMisses;
+            memo.commit();
+        }
+    }
+
+    /**
+     * Like TreeNode.expandUniverse, but neither canonicalizes the new nodes nor changes TreeNode.size.
+     */
+    private static TreeNode expandDetached(TreeNode node) {
+        TreeNode border = node.createEmptyTree(node.level - 1);
+        return new TreeNode(new TreeNode(border, border, border, node.northWest),
+                new TreeNode(border, border, node.northEast, border),
+                new TreeNode(border, node.southWest, border, border),
+                new TreeNode(node.southEast, border, border, border));
+    }
+
+    /**
+     * Counts the cells alive only after (births, changes[0]) or only before (deaths, changes[1]), skipping shared
+     * subtrees.
+     */
+    private static void countChanges(TreeNode before, TreeNode after, long[] changes) {
+        if (before == after) {
+            return;
+        }
+        if (before.population == 0 || after.population == 0) {
+            changes[0] += (long) after.population;
+            changes[1] += (long) before.population;
+            return;
+        }
+        if (before.level == 0) {
+            return;
+        }
+        countChanges(before.northWest, after.northWest, changes);
+        countChanges(before.northEast, after.northEast, changes);
+        countChanges(before.southWest, after.southWest, changes);
+        countChanges(before.southEast, after.southEast, changes);
+    }
+
+    /**
+     * Finds the min. X (or Y) coordinate of the live cells, searching the lower quadrants first and skipping
+     * quadrants that cannot improve on the best value found so far.
+     * @param origin the min. coordinate covered by the node.
+     */
+    private static long minCoordinate(TreeNode node, long origin, boolean vertical, long best) {
+        if (node.population == 0 || origin >= best) {
+            return best;
+        }
+        if (node.level == 0) {
+            return origin;
+        }
+        long half = 1L << (node.level - 1);
+        best = minCoordinate(node.northWest, origin, vertical, best);
+        best = minCoordinate(vertical ? node.northEast : node.southWest, origin, vertical, best);
+        best = minCoordinate(vertical ? node.southWest : node.northEast, origin + half, vertical, best);
+        return minCoordinate(node.southEast, origin + half, vertical, best);
+    }
+
+    /**
+     * Finds the max. X (or Y) coordinate of the live cells, like minCoordinate.
+     * @param origin the min. coordinate covered by the node.
+     */
+    private static long maxCoordinate(TreeNode node, long origin, boolean vertical, long best) {
+        long size = 1L << node.level;
+        if (node.population == 0 || origin + size - 1 <= best) {
+            return best;
+        }
+        if (node.level == 0) {
+            return origin;
+        }
+        long half = size / 2;
+        best = maxCoordinate(node.southEast, origin + half, vertical, best);
+        best = maxCoordinate(vertical ? node.southWest : node.northEast, origin + half, vertical, best);
+        best = maxCoordinate(vertical ? node.northEast : node.southWest, origin, vertical, best);
+        return maxCoordinate(node.northWest, origin, vertical, best);
     }
 
     public double getPopulation() {
@@ -74,15 +333,28 @@ public class Universe {
 //    }
 
     public void traverse() {
+        LifeEvents.Write event = new LifeEvents.Write();
+        event.begin();
+        long[] cells = new long[(int) this.root.population];
+        int count = 0;
         int size = TreeNode.getSize();
-        for (int x = -size;x<size;x++) {
-            for (int y = -size;y<size;y++) {
-                int bit = this.root.getBit(x, y);
-                if (bit == 1) {
-                    System.out.format("%1$d %2$d\n", x, y);
+        for (int x = -size; x < size; x++) {
+            for (int y = -size; y < size; y++) {
+                if (this.root.getBit(x, y) == 1) {
+                    cells[count++] = CellTable.key(x, y);
                 }
             }
         }
+        try {
+            SortedCellWriter.write(cells, count, new FileOutputStream(FileDescriptor.out).getChannel());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.cells = count;
+            event.commit();
+        }
     }
 
     public String toString() {